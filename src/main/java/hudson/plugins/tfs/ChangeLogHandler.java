@@ -0,0 +1,36 @@
+package hudson.plugins.tfs;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import hudson.plugins.tfs.commands.ParseHandler;
+import hudson.plugins.tfs.model.ChangeSet;
+
+/**
+ * Handler that writes the change sets to the change log as they are parsed, 
+ * and keeps track of the highest change set number.
+ */
+public class ChangeLogHandler implements ParseHandler<ChangeSet> {
+    private final ChangeSetWriter writer;
+    private final Writer output;
+    private int highestChangeSetNumber;
+
+    public ChangeLogHandler(ChangeSetWriter writer, Writer output) {
+        this.writer = writer;
+        this.output = output;
+    }
+
+    public boolean handle(ChangeSet changeSet) throws IOException {
+        writer.write(changeSet, output);
+        highestChangeSetNumber = Math.max(highestChangeSetNumber, Integer.parseInt(changeSet.getVersion()));
+        return true;
+    }
+
+    /**
+     * Returns the highest change set number of the handled change sets
+     * @return the highest change set number; 0 if no change set has been handled
+     */
+    public int getHighestChangeSetNumber() {
+        return highestChangeSetNumber;
+    }
+}
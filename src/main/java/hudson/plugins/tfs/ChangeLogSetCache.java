@@ -0,0 +1,140 @@
+package hudson.plugins.tfs;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hudson.model.AbstractBuild;
+import hudson.plugins.tfs.model.ChangeLogSet;
+import hudson.plugins.tfs.model.ChangeSet;
+
+/**
+ * Cache of parsed change logs, so the change log file does not have to be parsed every
+ * time the changes of a build are viewed.
+ * <p>
+ * The change sets are cached by the path of the change log file, and are only used
+ * as long as the file has the same modification time and length. A build that is reloaded
+ * from disk is a new build object, so the cached change sets do not belong to any build; every
+ * lookup returns a change log set with copies of the change sets for the requesting build.
+ * The cache holds a limited number of change logs, and the least recently used change log is
+ * evicted when the cache is full. The change sets are held through soft references so the garbage
+ * collector can reclaim them if the memory is needed, and change log files that are larger than
+ * the max file size are never cached.
+ */
+public class ChangeLogSetCache {
+
+    private final int maxFileSize;
+    private final Map<String, SoftReference<CacheEntry>> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maxEntries max number of change log sets in the cache
+     * @param maxFileSize max size in bytes of a change log file whose change log set is cached
+     */
+    public ChangeLogSetCache(final int maxEntries, int maxFileSize) {
+        this.maxFileSize = maxFileSize;
+        entries = new LinkedHashMap<String, SoftReference<CacheEntry>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<CacheEntry>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a change log set for the build with the cached change sets of the change log file
+     * @param build the build that the change log belongs to
+     * @param changelogFile the change log file
+     * @return a change log set for the build; null if the change log is not in the cache or if the file has changed
+     */
+    public ChangeLogSet get(AbstractBuild<?,?> build, File changelogFile) {
+        String key = changelogFile.getAbsolutePath();
+        CacheEntry entry = null;
+        synchronized (entries) {
+            SoftReference<CacheEntry> reference = entries.get(key);
+            if (reference != null) {
+                entry = reference.get();
+                if (entry == null) {
+                    entries.remove(key);
+                }
+            }
+        }
+        if ((entry != null) && entry.isValidFor(changelogFile)) {
+            hitCount.incrementAndGet();
+            return new ChangeLogSet(build, copyOf(entry.changeSets));
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds the change sets of the change log file to the cache, if the file is not too large.
+     * The cache keeps copies of the change sets, so they do not hold on to the build.
+     * @param changelogFile the change log file that the change sets were parsed from
+     * @param changeSets the parsed change sets
+     */
+    public void put(File changelogFile, List<ChangeSet> changeSets) {
+        long length = changelogFile.length();
+        if (length > maxFileSize) {
+            return;
+        }
+        CacheEntry entry = new CacheEntry(copyOf(changeSets), changelogFile.lastModified(), length);
+        synchronized (entries) {
+            entries.put(changelogFile.getAbsolutePath(), new SoftReference<CacheEntry>(entry));
+        }
+    }
+
+    /**
+     * Removes all change log sets from the cache
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static List<ChangeSet> copyOf(List<ChangeSet> changeSets) {
+        List<ChangeSet> copies = new ArrayList<ChangeSet>(changeSets.size());
+        for (ChangeSet changeSet : changeSets) {
+            copies.add(changeSet.copy());
+        }
+        return copies;
+    }
+
+    private static class CacheEntry {
+        private final List<ChangeSet> changeSets;
+        private final long lastModified;
+        private final long length;
+
+        public CacheEntry(List<ChangeSet> changeSets, long lastModified, long length) {
+            this.changeSets = changeSets;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public boolean isValidFor(File changelogFile) {
+            return (changelogFile.lastModified() == lastModified)
+                && (changelogFile.length() == length);
+        }
+    }
+}
@@ -1,58 +1,207 @@
 package hudson.plugins.tfs;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.apache.commons.digester.Digester;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
 import org.apache.commons.io.IOUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 import hudson.model.AbstractBuild;
 import hudson.plugins.tfs.model.ChangeLogSet;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.scm.ChangeLogParser;
-import hudson.util.Digester2;
 
 /**
  * TeamFoundation change log reader.
+ * <p>
+ * The change log is read with a SAX handler that creates the change sets and items
+ * directly, as the change log is read every time the changes of a build are viewed. 
+ * The parsed change logs are also kept in a {@link ChangeLogSetCache} shared by all readers.
  * 
  * @author Erik Ramfelt
  */ 
 public class ChangeSetReader extends ChangeLogParser {
 
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+    /** Max number of change logs in the cache */
+    static final int CACHE_MAX_ENTRIES = 100;
+
+    /** Max size in bytes of a change log file that is cached */
+    static final int CACHE_MAX_FILE_SIZE = 1024 * 1024;
+
+    private static final ChangeLogSetCache CACHE = new ChangeLogSetCache(CACHE_MAX_ENTRIES, CACHE_MAX_FILE_SIZE);
+
+    private final boolean lazyItems;
+
+    public ChangeSetReader() {
+        this(false);
+    }
+
+    /**
+     * @param lazyItems true if the items in the change sets should not be created
+     * until they are retrieved from the change set; false if they should be created directly
+     */
+    public ChangeSetReader(boolean lazyItems) {
+        this.lazyItems = lazyItems;
+    }
+
+    /**
+     * Returns the cache of parsed change logs
+     */
+    public static ChangeLogSetCache getCache() {
+        return CACHE;
+    }
+
     @Override
     public ChangeLogSet parse(AbstractBuild build, File changelogFile) throws IOException, SAXException {
-        FileReader reader = new FileReader(changelogFile);
+        ChangeLogSet changeLogSet = CACHE.get(build, changelogFile);
+        if (changeLogSet != null) {
+            return changeLogSet;
+        }
+        List<ChangeSet> changeSets;
+        try {
+            // The change log is written in UTF-8 by the ChangeSetWriter
+            changeSets = parse(changelogFile, Charset.forName("UTF-8"));
+        } catch (CharacterCodingException e) {
+            // Change logs that were written by older versions are in the platform encoding
+            changeSets = parse(changelogFile, Charset.defaultCharset());
+        }
+        CACHE.put(changelogFile, changeSets);
+        return new ChangeLogSet(build, changeSets);
+    }
+
+    public ChangeLogSet parse(AbstractBuild<?,?> build, Reader reader) throws IOException, SAXException {
+        return new ChangeLogSet(build, parse(new InputSource(reader)));
+    }
+
+    /**
+     * Parses the change log file with the charset, and fails with a CharacterCodingException if 
+     * the file contains bytes that are not valid in the charset.
+     */
+    private List<ChangeSet> parse(File changelogFile, Charset charset) throws IOException, SAXException {
+        Reader reader = new InputStreamReader(new FileInputStream(changelogFile), charset.newDecoder());
         try {
-            return parse(build, reader);
+            return parse(new InputSource(reader));
+        } catch (SAXException e) {
+            // The parser may wrap the exception from the reader
+            if (e.getException() instanceof CharacterCodingException) {
+                throw (CharacterCodingException) e.getException();
+            }
+            throw e;
         } finally {
             IOUtils.closeQuietly(reader);
         }
     }
 
-    public ChangeLogSet parse(AbstractBuild<?,?> build, Reader reader) throws IOException, SAXException {
-        List<ChangeSet> changesetList = new ArrayList<ChangeSet>();
-        Digester digester = new Digester2();
-        digester.push(changesetList);
-
-        digester.addObjectCreate("*/changeset", ChangeSet.class);
-        digester.addSetProperties("*/changeset");
-        digester.addBeanPropertySetter("*/changeset/date", "dateStr");
-        digester.addBeanPropertySetter("*/changeset/user");
-        digester.addBeanPropertySetter("*/changeset/comment");
-        digester.addSetNext("*/changeset", "add");
-
-        digester.addObjectCreate("*/changeset/items/item", ChangeSet.Item.class);
-        digester.addSetProperties("*/changeset/items/item");
-        digester.addBeanPropertySetter("*/changeset/items/item", "path");
-        digester.addSetNext("*/changeset/items/item", "add");
-        
-        digester.parse(reader);
-
-        return new ChangeLogSet(build, changesetList);
+    private List<ChangeSet> parse(InputSource source) throws IOException, SAXException {
+        ChangeLogHandler handler = new ChangeLogHandler(lazyItems);
+        createParser().parse(source, handler);
+        return handler.getChangeSets();
+    }
+
+    private SAXParser createParser() throws SAXException {
+        try {
+            synchronized (PARSER_FACTORY) {
+                return PARSER_FACTORY.newSAXParser();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+    }
+
+    /**
+     * Handler that creates change sets from the change log elements, 
+     * ie "changelog/changeset/items/item".
+     */
+    private static class ChangeLogHandler extends DefaultHandler {
+        private final boolean lazyItems;
+        private final List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+        private final List<String> unloadedItems = new ArrayList<String>();
+        private final StringBuilder text = new StringBuilder();
+        private ChangeSet changeSet;
+        private String itemAction;
+
+        public ChangeLogHandler(boolean lazyItems) {
+            this.lazyItems = lazyItems;
+        }
+
+        public List<ChangeSet> getChangeSets() {
+            return changeSets;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            text.setLength(0);
+            if (qName.equals("changeset")) {
+                changeSet = new ChangeSet();
+                String version = attributes.getValue("version");
+                if (version != null) {
+                    changeSet.setVersion(version);
+                }
+            } else if ((changeSet != null) && qName.equals("item")) {
+                itemAction = attributes.getValue("action");
+                if (itemAction == null) {
+                    itemAction = "";
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (changeSet == null) {
+                return;
+            }
+            if (qName.equals("changeset")) {
+                if (!unloadedItems.isEmpty()) {
+                    changeSet.setUnloadedItems(unloadedItems.toArray(new String[unloadedItems.size()]));
+                    unloadedItems.clear();
+                }
+                changeSets.add(changeSet);
+                changeSet = null;
+            } else if (qName.equals("date")) {
+                try {
+                    changeSet.setDateStr(getText());
+                } catch (ParseException e) {
+                    throw new SAXException(e);
+                }
+            } else if (qName.equals("user")) {
+                changeSet.setUser(getText());
+            } else if (qName.equals("comment")) {
+                changeSet.setComment(getText());
+            } else if (qName.equals("item")) {
+                if (lazyItems) {
+                    unloadedItems.add(itemAction);
+                    unloadedItems.add(getText());
+                } else {
+                    changeSet.add(new ChangeSet.Item(getText(), itemAction));
+                }
+            }
+            text.setLength(0);
+        }
+
+        private String getText() {
+            return text.toString().trim();
+        }
     }
 }
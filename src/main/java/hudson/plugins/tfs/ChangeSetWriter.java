@@ -4,10 +4,11 @@ import hudson.Util;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.util.DateUtil;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.List;
 
@@ -15,18 +16,25 @@ import org.apache.commons.io.IOUtils;
 
 /**
  * Team Foundation change log writer.
+ * <p>
+ * The change log can be written either from a list of change sets, or one change set
+ * at a time by calling {@link #writeHeader(Writer)}, {@link #write(ChangeSet, Writer)} for
+ * each change set and last {@link #writeFooter(Writer)}. The latter makes it possible to write
+ * the change sets while they are parsed from the history, without keeping them in memory.
  * 
  * @author Erik Ramfelt
  */
 public class ChangeSetWriter {
 
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
     /**
      * Writes the list of change sets to the file
      * @param changeSets list of change sets
      * @param changelogFile file to write change sets to
      */
     public void write(List<ChangeSet> changeSets, File changelogFile) throws IOException {
-        FileWriter writer = new FileWriter(changelogFile);
+        Writer writer = createWriter(changelogFile);
         try {
             write(changeSets, writer);
         } finally {
@@ -39,74 +47,122 @@ public class ChangeSetWriter {
      * @param changeSets list of change sets
      * @param output output writer
      */    
-    public void write(List<ChangeSet> changeSets, Writer output) {
-        PrintWriter writer = new PrintWriter(output);
-        
-        writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        writer.println("<changelog>");
-        
+    public void write(List<ChangeSet> changeSets, Writer output) throws IOException {
+        writeHeader(output);
         for (ChangeSet changeSet : changeSets) {
-            writer.println(String.format("\t<changeset version=\"%s\">", changeSet.getVersion()));
-            write(changeSet, writer);
-            writer.println("\t</changeset>");
+            write(changeSet, output);
         }
-        
-        writer.println("</changelog>");
-        writer.flush();
+        writeFooter(output);
+        output.flush();
+    }
+
+    /**
+     * Returns a buffered writer for the change log file, that writes the change log in UTF-8 
+     * as it is declared in the XML header.
+     * @param changelogFile file to write change sets to
+     */
+    public Writer createWriter(File changelogFile) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(changelogFile), "UTF-8"));
+    }
+
+    /**
+     * Writes the start of the change log, before any change sets
+     * @param output output writer
+     */
+    public void writeHeader(Writer output) throws IOException {
+        output.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        output.write(LINE_SEPARATOR);
+        output.write("<changelog>");
+        output.write(LINE_SEPARATOR);
     }
 
-    private void write(ChangeSet changeSet, PrintWriter writer) {
-        writer.println(String.format("\t\t<date>%s</date>", DateUtil.TFS_DATETIME_FORMATTER.get().format(changeSet.getDate())));
-        if (Util.fixEmpty(changeSet.getDomain()) == null) {
-            writer.println(String.format("\t\t<user>%s</user>", escapeForXml(changeSet.getUser())));
-        } else {
-            writer.println(String.format("\t\t<user>%s\\%s</user>", escapeForXml(changeSet.getDomain()), escapeForXml(changeSet.getUser())));
+    /**
+     * Writes the end of the change log, after all change sets
+     * @param output output writer
+     */
+    public void writeFooter(Writer output) throws IOException {
+        output.write("</changelog>");
+        output.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes one change set to the change log
+     * @param changeSet the change set
+     * @param output output writer
+     */
+    public void write(ChangeSet changeSet, Writer output) throws IOException {
+        output.write("\t<changeset version=\"");
+        writeEscaped(changeSet.getVersion(), output);
+        output.write("\">");
+        output.write(LINE_SEPARATOR);
+        
+        output.write("\t\t<date>");
+        output.write(DateUtil.TFS_DATETIME_FORMATTER.get().format(changeSet.getDate()));
+        output.write("</date>");
+        output.write(LINE_SEPARATOR);
+        
+        output.write("\t\t<user>");
+        if (Util.fixEmpty(changeSet.getDomain()) != null) {
+            writeEscaped(changeSet.getDomain(), output);
+            output.write('\\');
         }
-        writer.println(String.format("\t\t<comment>%s</comment>", escapeForXml(changeSet.getComment())));
-        if (changeSet.getItems().size() > 0) {
-            writer.println("\t\t<items>");
-            for (ChangeSet.Item item : changeSet.getItems()) {
-                writer.println(String.format("\t\t\t<item action=\"%s\">%s</item>", escapeForXml(item.getAction()), escapeForXml(item.getPath())));
+        writeEscaped(changeSet.getUser(), output);
+        output.write("</user>");
+        output.write(LINE_SEPARATOR);
+        
+        output.write("\t\t<comment>");
+        writeEscaped(changeSet.getComment(), output);
+        output.write("</comment>");
+        output.write(LINE_SEPARATOR);
+        
+        List<ChangeSet.Item> items = changeSet.getItems();
+        if (items.size() > 0) {
+            output.write("\t\t<items>");
+            output.write(LINE_SEPARATOR);
+            for (ChangeSet.Item item : items) {
+                output.write("\t\t\t<item action=\"");
+                writeEscaped(item.getAction(), output);
+                output.write("\">");
+                writeEscaped(item.getPath(), output);
+                output.write("</item>");
+                output.write(LINE_SEPARATOR);
             }
-            writer.println("\t\t</items>");
+            output.write("\t\t</items>");
+            output.write(LINE_SEPARATOR);
         }
+        
+        output.write("\t</changeset>");
+        output.write(LINE_SEPARATOR);
     }
 
     /**
+     * Writes the string so it can be read from the XML, ie special characters are converted to entities.
+     * Parts of the string that do not need to be escaped are written directly from the string.
      * 
-     * Converts the input in the way that it can be written to the XML.
-     * Special characters are converted to XML understandable way.
-     * 
-     * @param object The object to be escaped.
-     * @return Escaped string that can be written to XML.
+     * @param string The string to be escaped; if it is null then "null" is written.
+     * @param output output writer
      */
-    private String escapeForXml(Object object)
-    {
-        if(object == null)
-        {
-            return null;
+    private void writeEscaped(String string, Writer output) throws IOException {
+        if (string == null) {
+            output.write("null");
+            return;
         }
-
-        //Loop through and replace the special chars.
-        String string = object.toString();
         int size = string.length();
-        char ch;
-        StringBuilder escapedString = new StringBuilder(size);
-        for(int index = 0;index < size;index ++)
-        {
-            //Convert special chars.
-            ch = string.charAt(index);
-            switch(ch)
-            {
-                case '&'  : escapedString.append("&amp;");  break;
-                case '<'  : escapedString.append("&lt;");   break;
-                case '>'  : escapedString.append("&gt;");   break;
-                case '\'' : escapedString.append("&apos;"); break;
-                case '\"' : escapedString.append("&quot;");break;
-                default:    escapedString.append(ch);
+        int start = 0;
+        for (int index = 0; index < size; index++) {
+            String entity;
+            switch (string.charAt(index)) {
+                case '&'  : entity = "&amp;";  break;
+                case '<'  : entity = "&lt;";   break;
+                case '>'  : entity = "&gt;";   break;
+                case '\'' : entity = "&apos;"; break;
+                case '\"' : entity = "&quot;"; break;
+                default:    continue;
             }
+            output.write(string, start, index - start);
+            output.write(entity);
+            start = index + 1;
         }
-
-        return escapedString.toString();
+        output.write(string, start, size - start);
     }
 }
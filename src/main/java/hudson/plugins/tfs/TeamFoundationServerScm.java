@@ -4,10 +4,12 @@ import static hudson.Util.fixEmpty;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.text.ParseException;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -15,6 +17,7 @@ import javax.servlet.ServletException;
 
 import net.sf.json.JSONObject;
 
+import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -32,15 +35,20 @@ import hudson.model.ParametersAction;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.plugins.tfs.actions.CheckoutAction;
+import hudson.plugins.tfs.actions.RemoteCheckoutAction;
 import hudson.plugins.tfs.actions.RemoveWorkspaceAction;
+import hudson.plugins.tfs.actions.UpdateWorkspaceMappingsAction;
 import hudson.plugins.tfs.browsers.TeamFoundationServerRepositoryBrowser;
+import hudson.plugins.tfs.commands.ParseHandler;
+import hudson.plugins.tfs.model.ChangeSetWatermark;
 import hudson.plugins.tfs.model.WorkspaceConfiguration;
 import hudson.plugins.tfs.model.Server;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.util.BuildVariableResolver;
-import hudson.plugins.tfs.util.BuildWorkspaceConfigurationRetriever;
 import hudson.plugins.tfs.util.BuildWorkspaceConfigurationRetriever.BuildWorkspaceConfiguration;
+import hudson.plugins.tfs.util.FolderMirror;
 import hudson.plugins.tfs.util.ProjectPathUtil;
+import hudson.plugins.tfs.util.WorkspaceConfigurationIndex;
 import hudson.scm.ChangeLogParser;
 import hudson.scm.RepositoryBrowsers;
 import hudson.scm.SCM;
@@ -62,6 +70,8 @@ public class TeamFoundationServerScm extends SCM {
     public static final String SERVERURL_ENV_STR = "TFS_SERVERURL";
     public static final String USERNAME_ENV_STR = "TFS_USERNAME";
     
+    static final String DEFAULT_WORKSPACE_NAME = "Hudson-${JOB_NAME}-${NODE_NAME}";
+    
     private final String serverUrl;
     private final String projectPath;
     private final String localPath;
@@ -72,17 +82,24 @@ public class TeamFoundationServerScm extends SCM {
     
     private TeamFoundationServerRepositoryBrowser repositoryBrowser;
 
-    private transient String normalizedWorkspaceName;
-    
     private static final Logger logger = Logger.getLogger(TeamFoundationServerScm.class.getName()); 
 
+    private static final WorkspacePool WORKSPACE_POOL = new WorkspacePool();
+
+    /** Handler that stops the history parsing at the first change set, as polling only needs to know if there is one */
+    private static final ParseHandler<ChangeSet> STOP_AT_FIRST_CHANGE_SET = new ParseHandler<ChangeSet>() {
+        public boolean handle(ChangeSet changeSet) {
+            return false;
+        }
+    };
+
     @DataBoundConstructor
     public TeamFoundationServerScm(String serverUrl, String projectPath, String localPath, boolean useUpdate, String workspaceName, String userName, String userPassword) {
         this.serverUrl = serverUrl;
         this.projectPath = projectPath;
         this.useUpdate = useUpdate;
         this.localPath = (Util.fixEmptyAndTrim(localPath) == null ? "." : localPath);
-        this.workspaceName = (Util.fixEmptyAndTrim(workspaceName) == null ? "Hudson-${JOB_NAME}-${NODE_NAME}" : workspaceName);
+        this.workspaceName = (Util.fixEmptyAndTrim(workspaceName) == null ? DEFAULT_WORKSPACE_NAME : workspaceName);
         this.userName = userName;
         this.userPassword = Scrambler.scramble(userPassword);
     }
@@ -118,7 +135,7 @@ public class TeamFoundationServerScm extends SCM {
     // Bean properties END
 
     String getWorkspaceName(AbstractBuild<?,?> build, Launcher launcher) {
-        normalizedWorkspaceName = workspaceName;
+        String normalizedWorkspaceName = workspaceName;
         if (build != null) {
             normalizedWorkspaceName = substituteBuildParameter(build, normalizedWorkspaceName);
             normalizedWorkspaceName = Util.replaceMacro(normalizedWorkspaceName, new BuildVariableResolver(build.getProject(), launcher));
@@ -148,33 +165,161 @@ public class TeamFoundationServerScm extends SCM {
     
     @Override
     public boolean checkout(AbstractBuild build, Launcher launcher, FilePath workspaceFilePath, BuildListener listener, File changelogFile) throws IOException, InterruptedException {
-        Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspaceFilePath), build);
+        if (usesPooledWorkspace()) {
+            return checkoutFromPool(build, launcher, workspaceFilePath, listener, changelogFile);
+        }
+        
+        Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspaceFilePath, getDescriptor().getProxyUrl()), build);
         WorkspaceConfiguration workspaceConfiguration = new WorkspaceConfiguration(server.getUrl(), getWorkspaceName(build, launcher), getProjectPath(build), getLocalPath());
         
         // Check if the configuration has changed
         if (build.getPreviousBuild() != null) {
-            BuildWorkspaceConfiguration nodeConfiguration = new BuildWorkspaceConfigurationRetriever().getLatestForNode(build.getBuiltOn(), build.getPreviousBuild());
+            BuildWorkspaceConfiguration nodeConfiguration = WorkspaceConfigurationIndex.forJob(build.getProject()).getLatestForNode(build.getBuiltOn(), build.getPreviousBuild());
             if ((nodeConfiguration != null) &&
                     nodeConfiguration.workspaceExists() 
                     && (! workspaceConfiguration.equals(nodeConfiguration))) {
-                listener.getLogger().println("Deleting workspace as the configuration has changed since a build was performed on this computer.");
-                new RemoveWorkspaceAction(workspaceConfiguration.getWorkspaceName()).remove(server);
+                if (isUseUpdate() && workspaceConfiguration.isSameWorkspace(nodeConfiguration)) {
+                    // Only the mappings have changed, so the folders that are still mapped can keep their files
+                    listener.getLogger().println("Updating workspace mappings as the configuration has changed since a build was performed on this computer.");
+                    try {
+                        new UpdateWorkspaceMappingsAction(workspaceConfiguration).update(server, workspaceFilePath);
+                    } catch (ParseException pe) {
+                        listener.fatalError(pe.getMessage());
+                        throw new AbortException();
+                    }
+                } else {
+                    listener.getLogger().println("Deleting workspace as the configuration has changed since a build was performed on this computer.");
+                    new RemoveWorkspaceAction(workspaceConfiguration.getWorkspaceName()).remove(server);
+                    nodeConfiguration.setWorkspaceWasRemoved();
+                    nodeConfiguration.save();
+                }
+            }
+        }
+        
+        build.addAction(workspaceConfiguration);
+        try {
+            checkout(build, server, workspaceConfiguration, workspaceFilePath, listener, changelogFile);
+        } finally {
+            // A failed checkout may have created the workspace, it must be found when the job's workspace is deleted
+            WorkspaceConfigurationIndex.forJob(build.getProject()).put(build, workspaceConfiguration);
+        }
+        return true;
+    }
+
+    /**
+     * Returns if the job shares a pooled workspace with other jobs, instead of having a workspace of its own.
+     * Only jobs that update their workspace and that use the default workspace name use the pool.
+     */
+    private boolean usesPooledWorkspace() {
+        return getDescriptor().isPoolWorkspaces() && isUseUpdate() && DEFAULT_WORKSPACE_NAME.equals(workspaceName);
+    }
+
+    /**
+     * Checks out the files to a pooled workspace, and copies the changed files to the Hudson workspace
+     */
+    private boolean checkoutFromPool(AbstractBuild build, Launcher launcher, FilePath workspaceFilePath, BuildListener listener, File changelogFile) throws IOException, InterruptedException {
+        // The workspace that the job used before it was pooled is not needed anymore
+        if (build.getPreviousBuild() != null) {
+            BuildWorkspaceConfiguration nodeConfiguration = WorkspaceConfigurationIndex.forJob(build.getProject()).getLatestForNode(build.getBuiltOn(), build.getPreviousBuild());
+            if ((nodeConfiguration != null) && nodeConfiguration.workspaceExists() 
+                    && !WorkspacePool.isPooled(nodeConfiguration.getWorkspaceName())) {
+                listener.getLogger().println("Deleting workspace as the job uses a pooled workspace on this computer.");
+                Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspaceFilePath, getDescriptor().getProxyUrl()), build);
+                new RemoveWorkspaceAction(nodeConfiguration.getWorkspaceName()).remove(server);
                 nodeConfiguration.setWorkspaceWasRemoved();
                 nodeConfiguration.save();
             }
         }
         
-        build.addAction(workspaceConfiguration);
-        CheckoutAction action = new CheckoutAction(workspaceConfiguration, isUseUpdate());
+        WorkspacePool.Lease lease = WORKSPACE_POOL.lease(build.getBuiltOnStr(), 
+                (build.getBuiltOn() != null ? build.getBuiltOn().getRootPath() : null), 
+                getServerUrl(build), getUserName(), getProjectPath(build), getLocalPath(), workspaceFilePath);
         try {
-            List<ChangeSet> list = action.checkout(server, workspaceFilePath, build.getPreviousBuild() != null ? build.getPreviousBuild().getTimestamp() : null);
+            listener.getLogger().println(String.format("Checking out to the pooled workspace %s in %s", lease.getWorkspaceName(), lease.getFolder().getRemote()));
+            lease.getFolder().mkdirs();
+            Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, lease.getFolder(), getDescriptor().getProxyUrl()), build);
+            WorkspaceConfiguration workspaceConfiguration = new WorkspaceConfiguration(server.getUrl(), lease.getWorkspaceName(), getProjectPath(build), getLocalPath());
+            build.addAction(workspaceConfiguration);
+            try {
+                checkout(build, server, workspaceConfiguration, lease.getFolder(), listener, changelogFile);
+            } finally {
+                // A failed checkout may have created the workspace, it must be found when the job's workspace is deleted
+                WorkspaceConfigurationIndex.forJob(build.getProject()).put(build, workspaceConfiguration);
+            }
+            
+            int copiedFiles = new FolderMirror(lease.getFolder(), lease.getMirrorManifest()).mirror(workspaceFilePath);
+            listener.getLogger().println(String.format("Copied %d changed files from the pooled workspace", copiedFiles));
+        } finally {
+            WORKSPACE_POOL.release(lease);
+        }
+        return true;
+    }
+
+    /**
+     * Checks out the files to the local path, and writes the change log
+     * @param checkoutPath the path that the workspace is mapped in
+     */
+    private void checkout(AbstractBuild<?, ?> build, Server server, WorkspaceConfiguration workspaceConfiguration, FilePath checkoutPath,
+            BuildListener listener, File changelogFile) throws IOException, InterruptedException {
+        Run<?,?> previousBuild = build.getPreviousBuild();
+        ChangeSetWatermark previousWatermark = (previousBuild != null ? previousBuild.getAction(ChangeSetWatermark.class) : null);
+        if (getDescriptor().isCheckoutOnNode()) {
+            // The node streams the compressed change log to a file next to the change log while the history is parsed
+            File compressedChangelogFile = new File(changelogFile.getPath() + ".gz");
+            int changeSetNumber;
+            try {
+                OutputStream compressedChangeLog = RemoteCheckoutAction.createChangeLogStream(compressedChangelogFile);
+                try {
+                    changeSetNumber = checkoutPath.act(new RemoteCheckoutAction(getDescriptor().getTfExecutable(), getDescriptor().getProxyUrl(), 
+                            server, workspaceConfiguration, isUseUpdate(), getDescriptor().getCheckoutParallelism(), 
+                            previousBuild != null ? previousBuild.getTimestamp() : null, 
+                            previousWatermark != null ? previousWatermark.getChangeSetNumber() : null, 
+                            compressedChangeLog, listener));
+                } finally {
+                    // The node completes the change log even if the checkout fails, so it can be read
+                    IOUtils.closeQuietly(compressedChangeLog);
+                    RemoteCheckoutAction.uncompressChangeLog(compressedChangelogFile, changelogFile);
+                }
+            } finally {
+                compressedChangelogFile.delete();
+            }
+            ChangeSetWatermark watermark = ChangeSetWatermark.create(previousWatermark, changeSetNumber);
+            if (watermark != null) {
+                build.addAction(watermark);
+            }
+            return;
+        }
+        
+        CheckoutAction action = new CheckoutAction(workspaceConfiguration, isUseUpdate(), getDescriptor().getCheckoutParallelism());
+        try {
+            // The change sets are written to the change log while the history is parsed
             ChangeSetWriter writer = new ChangeSetWriter();
-            writer.write(list, changelogFile);
+            Writer output = writer.createWriter(changelogFile);
+            ChangeLogHandler handler = new ChangeLogHandler(writer, output);
+            int changeSetNumber;
+            try {
+                writer.writeHeader(output);
+                changeSetNumber = action.checkout(server, checkoutPath, 
+                        previousBuild != null ? previousBuild.getTimestamp() : null, 
+                        previousWatermark != null ? previousWatermark.getChangeSetNumber() : null,
+                        handler);
+            } finally {
+                try {
+                    // The change log is completed even if the checkout fails, so it can be read
+                    writer.writeFooter(output);
+                } finally {
+                    output.close();
+                }
+            }
+            // The files and the history were retrieved as of the change set, so the next build continues after it
+            ChangeSetWatermark watermark = ChangeSetWatermark.create(previousWatermark, changeSetNumber);
+            if (watermark != null) {
+                build.addAction(watermark);
+            }
         } catch (ParseException pe) {
             listener.fatalError(pe.getMessage());
             throw new AbortException();
         }
-        return true;
     }
 
     @Override
@@ -183,14 +328,21 @@ public class TeamFoundationServerScm extends SCM {
         if (lastRun == null) {
             return true;
         } else {
-            Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspace), lastRun);
+            Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspace, getDescriptor().getProxyUrl()), lastRun);
+            ChangeSetWatermark watermark = lastRun.getAction(ChangeSetWatermark.class);
             try {
                 for(String projectPath : ProjectPathUtil.getProjectPaths(getProjectPath(lastRun)))
                 {
-                    if(server.getProject(projectPath).getDetailedHistory(
+                    if (watermark != null) {
+                        ChangeSet latestChangeSet = server.getProject(projectPath).getCachedLatestChangeSet();
+                        if ((latestChangeSet != null) 
+                                && (Integer.parseInt(latestChangeSet.getVersion()) > watermark.getChangeSetNumber())) {
+                            return true;
+                        }
+                    } else if(!server.getProject(projectPath).getDetailedHistory(
                               lastRun.getTimestamp(), 
-                              Calendar.getInstance()
-                          ).size() > 0)
+                              Calendar.getInstance(),
+                              STOP_AT_FIRST_CHANGE_SET))
                     {
                       return true;
                     }
@@ -210,33 +362,31 @@ public class TeamFoundationServerScm extends SCM {
             return true;
         }
         
+        WorkspaceConfigurationIndex index = WorkspaceConfigurationIndex.forJob(project);
         // Due to an error in Hudson core (pre 1.321), null was sent in for all invocations of this method
         // Therefore we try to work around the problem, and see if its only built on one node or not. 
         if (node == null) { 
-            while (lastRun != null) {
-                AbstractBuild<?,?> build = (AbstractBuild<?, ?>) lastRun;
-                Node buildNode = build.getBuiltOn();
-                if (node == null) {
-                    node = buildNode;
-                } else {
-                    if (!buildNode.getNodeName().equals(node.getNodeName())) {
-                        logger.warning("Could not wipe out workspace as there is no way of telling what Node the request is for. Please upgrade Hudson to a newer version.");
-                        return false;
-                    }
-                }                
-                lastRun = lastRun.getPreviousBuild();
+            Set<String> nodeNames = index.getNodeNames(lastRun);
+            if (nodeNames.size() > 1) {
+                logger.warning("Could not wipe out workspace as there is no way of telling what Node the request is for. Please upgrade Hudson to a newer version.");
+                return false;
+            }
+            if (nodeNames.isEmpty()) {
+                return true;
             }
+            String nodeName = nodeNames.iterator().next();
+            node = (nodeName.length() == 0 ? Hudson.getInstance() : Hudson.getInstance().getNode(nodeName));
             if (node == null) {
                 return true;
             }
-            lastRun = project.getLastBuild();
         }
         
-        BuildWorkspaceConfiguration configuration = new BuildWorkspaceConfigurationRetriever().getLatestForNode(node, lastRun);
-        if ((configuration != null) && configuration.workspaceExists()) {
+        BuildWorkspaceConfiguration configuration = index.getLatestForNode(node, lastRun);
+        // Pooled workspaces are used by other jobs, and are not removed with the job's workspace
+        if ((configuration != null) && configuration.workspaceExists() && !WorkspacePool.isPooled(configuration.getWorkspaceName())) {
             LogTaskListener listener = new LogTaskListener(logger, Level.INFO);
             Launcher launcher = node.createLauncher(listener);        
-            Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspace), lastRun);
+            Server server = createServer(new TfTool(getDescriptor().getTfExecutable(), launcher, listener, workspace, getDescriptor().getProxyUrl()), lastRun);
             if (new RemoveWorkspaceAction(configuration.getWorkspaceName()).remove(server)) {
                 configuration.setWorkspaceWasRemoved();
                 configuration.save();
@@ -261,7 +411,7 @@ public class TeamFoundationServerScm extends SCM {
 
     @Override
     public ChangeLogParser createChangeLogParser() {
-        return new ChangeSetReader();
+        return new ChangeSetReader(true);
     }
 
     @Override
@@ -274,20 +424,28 @@ public class TeamFoundationServerScm extends SCM {
         return repositoryBrowser;
     }
 
+    /**
+     * Adds the TFS environment variables of the build. The workspace name, project path and server url
+     * are read from the workspace configuration that the checkout added to the build, as they may
+     * be resolved differently for concurrent builds of the job.
+     */
     @Override
     public void buildEnvVars(AbstractBuild build, Map<String, String> env) {
         super.buildEnvVars(build, env);
-        if (normalizedWorkspaceName != null) {
-            env.put(WORKSPACE_ENV_STR, normalizedWorkspaceName);
+        WorkspaceConfiguration workspaceConfiguration = (build != null ? (WorkspaceConfiguration) build.getAction(WorkspaceConfiguration.class) : null);
+        if (workspaceConfiguration != null) {
+            env.put(WORKSPACE_ENV_STR, workspaceConfiguration.getWorkspaceName());
         }
         if (env.containsKey("WORKSPACE")) {
             env.put(WORKFOLDER_ENV_STR, env.get("WORKSPACE") + File.separator + getLocalPath());
         }
-        if (projectPath != null) {
-            env.put(PROJECTPATH_ENV_STR, projectPath);
+        String buildProjectPath = (workspaceConfiguration != null ? workspaceConfiguration.getProjectPath() : projectPath);
+        if (buildProjectPath != null) {
+            env.put(PROJECTPATH_ENV_STR, buildProjectPath);
         }
-        if (serverUrl != null) {
-            env.put(SERVERURL_ENV_STR, serverUrl);
+        String buildServerUrl = (workspaceConfiguration != null ? workspaceConfiguration.getServerUrl() : serverUrl);
+        if (buildServerUrl != null) {
+            env.put(SERVERURL_ENV_STR, buildServerUrl);
         }
         if (userName != null) {
             env.put(USERNAME_ENV_STR, userName);
@@ -307,6 +465,10 @@ public class TeamFoundationServerScm extends SCM {
         public static final String PROJECT_PATH_REGEX = "^\\$\\/[^:;]*(\\s*:[^;]+)?(;\\s*\\$\\/[^:;]*(\\s*:[^;]+)?)*$";
 
         private String tfExecutable;
+        private boolean checkoutOnNode;
+        private int checkoutParallelism;
+        private String proxyUrl;
+        private boolean poolWorkspaces;
         
         protected DescriptorImpl() {
             super(TeamFoundationServerScm.class, TeamFoundationServerRepositoryBrowser.class);
@@ -321,6 +483,37 @@ public class TeamFoundationServerScm extends SCM {
             }
         }
         
+        /**
+         * Returns the url of the Team Foundation Server proxy that files are downloaded through
+         * @return the proxy url; null if files are downloaded directly from the server
+         */
+        public String getProxyUrl() {
+            return proxyUrl;
+        }
+        
+        /**
+         * Returns if the checkout should run on the node that the build is on, instead of
+         * launching each TF command from the master. 
+         */
+        public boolean isCheckoutOnNode() {
+            return checkoutOnNode;
+        }
+        
+        /**
+         * Returns if jobs with the same mappings should share pooled workspaces on each node, instead
+         * of each job having a workspace of its own. 
+         */
+        public boolean isPoolWorkspaces() {
+            return poolWorkspaces;
+        }
+        
+        /**
+         * Returns the max number of mapped projects in a job that are checked out at the same time.
+         */
+        public int getCheckoutParallelism() {
+            return Math.max(1, checkoutParallelism);
+        }
+        
         @Override
         public SCM newInstance(StaplerRequest req, JSONObject formData) throws FormException {
             TeamFoundationServerScm scm = (TeamFoundationServerScm) super.newInstance(req, formData);
@@ -387,6 +580,15 @@ public class TeamFoundationServerScm extends SCM {
         @Override
         public boolean configure(StaplerRequest req) throws FormException {
             tfExecutable = Util.fixEmpty(req.getParameter("tfs.tfExecutable").trim());
+            proxyUrl = Util.fixEmptyAndTrim(req.getParameter("tfs.proxyUrl"));
+            checkoutOnNode = (req.getParameter("tfs.checkoutOnNode") != null);
+            poolWorkspaces = (req.getParameter("tfs.poolWorkspaces") != null);
+            String parallelism = Util.fixEmptyAndTrim(req.getParameter("tfs.checkoutParallelism"));
+            try {
+                checkoutParallelism = (parallelism == null ? 1 : Integer.parseInt(parallelism));
+            } catch (NumberFormatException e) {
+                throw new FormException("Parallel project checkouts must be a number", "tfs.checkoutParallelism");
+            }
             save();
             return true;
         }
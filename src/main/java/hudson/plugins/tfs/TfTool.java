@@ -1,20 +1,25 @@
 package hudson.plugins.tfs;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.List;
 import java.util.logging.Logger;
 
-import hudson.AbortException;
 import hudson.FilePath;
+import hudson.FilePath.FileCallable;
 import hudson.Launcher;
 import hudson.Proc;
 import hudson.model.TaskListener;
+import hudson.plugins.tfs.util.BoundedPipe;
 import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
 import hudson.util.ForkOutputStream;
 
 /**
@@ -27,23 +32,56 @@ public class TfTool {
     static final int SUCCESS_EXIT_CODE = 0;
     static final int PARTIAL_SUCCESS_EXIT_CODE = 1;
     
+    /** 
+     * System property that disables running several commands through a command file,
+     * each command will then be launched as a separate process.
+     */
+    public static final String DISABLE_COMMAND_FILE = "tfs.tool.skipcommandfile";
+    
+    /** Environment variable that makes the TF tool download files through a Team Foundation Server proxy */
+    static final String PROXY_ENVIRONMENT_VARIABLE = "TFSPROXY";
+    
+    /** Encoding of the command files that are passed to the TF tool */
+    static final String COMMAND_FILE_ENCODING = "UTF-8";
+    
+    /** Max number of bytes of console output that is buffered before the command is blocked */
+    static final int OUTPUT_BUFFER_SIZE = 128 * 1024;
+    
     private Launcher launcher;
     private TaskListener listener;
     private FilePath workspace;
     private final String executable;
+    private final String proxyUrl;
     
     private static final Logger LOGGER = Logger.getLogger(TfTool.class.getName());
     
     public TfTool(String executable, Launcher launcher, TaskListener listener, FilePath workspace) {
+        this(executable, launcher, listener, workspace, null);
+    }
+    
+    /**
+     * @param proxyUrl the url of the Team Foundation Server proxy that files should be downloaded through,
+     * the proxy caches the file versions so they are only downloaded once from the server; null if
+     * the files should be downloaded directly from the server.
+     */
+    public TfTool(String executable, Launcher launcher, TaskListener listener, FilePath workspace, String proxyUrl) {
         this.executable = executable;
         this.launcher = launcher;
         this.listener = listener;
         this.workspace = workspace;
+        this.proxyUrl = proxyUrl;
     }
 
     public TaskListener getListener() {
         return listener;
     }
+
+    /**
+     * Returns the folder that the TF tool is run in
+     */
+    public FilePath getWorkspace() {
+        return workspace;
+    }
     
     /**
      * Returns the host name of the computer that is running the TF tool
@@ -73,7 +111,10 @@ public class TfTool {
     }
 
     /**
-     * Execute the arguments, and return the console output as a Reader
+     * Execute the arguments, and return the console output as a Reader.
+     * The output is streamed from the running command, and the result code
+     * of the command is checked when the end of the reader has been reached or when
+     * it is closed, ie the returned reader must always be closed.
      * @param arguments arguments to send to the command-line client.
      * @param masks which of the commands that should be masked from the console.
      * @return a Reader containing the console output
@@ -95,19 +136,152 @@ public class TfTool {
             }
         }
         
-        ByteArrayOutputStream consoleStream = new ByteArrayOutputStream();
-        Proc proc = launcher.launch(toolArguments, toolMasks, new String[]{}, 
-                null, new ForkOutputStream(consoleStream, listener.getLogger()), 
+        BoundedPipe pipe = new BoundedPipe(OUTPUT_BUFFER_SIZE);
+        String[] environment = (proxyUrl == null ? new String[]{} : new String[]{ PROXY_ENVIRONMENT_VARIABLE + "=" + proxyUrl });
+        Proc proc = launcher.launch(toolArguments, toolMasks, environment, 
+                null, new ForkOutputStream(pipe.getOutputStream(), listener.getLogger()), 
                 workspace);
-        consoleStream.close();
+        return new ToolOutputReader(proc, pipe, listener, toolArguments[1]);
+    }
+
+    /**
+     * Execute several commands in one command-line client process, and return the console output as a Reader.
+     * <p>
+     * Starting the client is expensive (for the Java based client every command starts a new JVM), so the commands
+     * are written to a temporary command file next to the workspace that is passed to the client as "@commandfile". If
+     * there is only one command, or if command files has been disabled through the {@link #DISABLE_COMMAND_FILE}
+     * system property, the commands are executed one at a time instead.
+     * @param commands list of arguments to send to the command-line client, one entry per command.
+     * @param masks list of which arguments in each command that should be masked from the console.
+     * @return a Reader containing the console output
+     */
+    public Reader executeBatch(List<String[]> commands, List<boolean[]> masks) throws IOException, InterruptedException {
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one command to execute");
+        }
+        if ((commands.size() == 1) || Boolean.valueOf(System.getProperty(DISABLE_COMMAND_FILE))) {
+            int last = commands.size() - 1;
+            for (int i = 0; i < last; i++) {
+                ToolOutputReader.waitFor(execute(commands.get(i), masks.get(i)));
+            }
+            return execute(commands.get(last), masks.get(last));
+        }
+        
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < commands.size(); i++) {
+            String[] arguments = commands.get(i);
+            boolean[] argumentMasks = masks.get(i);
+            StringBuilder logLine = new StringBuilder("$ ").append(executable);
+            for (int j = 0; j < arguments.length; j++) {
+                String argument = quoteCommandFileArgument(arguments[j]);
+                content.append(j == 0 ? "" : " ").append(argument);
+                logLine.append(' ').append(((argumentMasks != null) && argumentMasks[j]) ? "********" : argument);
+            }
+            content.append('\n');
+            listener.getLogger().println(logLine);
+        }
         
-        int result = proc.join();
-        LOGGER.fine(String.format("The TFS command '%s' returned with an error code of %d", toolArguments[1], result));
-        if ((result == SUCCESS_EXIT_CODE) || (result == PARTIAL_SUCCESS_EXIT_CODE)) {
-            return new InputStreamReader(new ByteArrayInputStream(consoleStream.toByteArray()));
-        } else {
-            listener.fatalError(String.format("Executable returned an unexpected result code [%d]", result));
-            throw new AbortException();
+        // The command file contains the credentials, so it is created in a temporary folder next to the
+        // workspace that only the user running the node can read
+        final String commandFileContent = content.toString();
+        FilePath temporaryFolder = getTemporaryFolder();
+        temporaryFolder.mkdirs();
+        setOwnerOnly(temporaryFolder);
+        String commandFilePath = temporaryFolder.act(new FileCallable<String>() {
+            private static final long serialVersionUID = 1L;
+            public String invoke(File folder, VirtualChannel channel) throws IOException {
+                File file = File.createTempFile("tf", ".tfc", folder);
+                try {
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(file), COMMAND_FILE_ENCODING);
+                    try {
+                        writer.write(commandFileContent);
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    file.delete();
+                    throw e;
+                }
+                return file.getAbsolutePath();
+            }
+        });
+        final FilePath commandFile = new FilePath(workspace.getChannel(), commandFilePath);
+        Reader reader;
+        try {
+            reader = execute(new String[]{ "@" + commandFilePath });
+        } catch (IOException e) {
+            commandFile.delete();
+            throw e;
+        }
+        // The command file is removed when the command has completed and the reader is closed, it is not
+        // left to deleteOnExit() as that would keep the name of every command file until the node is stopped
+        return new FilterReader(reader) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    try {
+                        commandFile.delete();
+                    } catch (InterruptedException e) {
+                        LOGGER.warning("Interrupted while removing command file " + commandFile);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the folder next to the workspace where temporary files such as command files are created
+     */
+    FilePath getTemporaryFolder() {
+        FilePath parent = workspace.getParent();
+        return (parent != null ? parent.child(workspace.getName() + "@tmp") : workspace.child(".tfs-tmp"));
+    }
+
+    /**
+     * Restricts the folder to the user running the node. Files in the folder can then not be read by
+     * other users whatever their own permissions are. This is a no-op on Windows, where the folder
+     * permissions of the workspace are inherited instead.
+     */
+    private static void setOwnerOnly(FilePath folder) throws InterruptedException {
+        try {
+            folder.chmod(0700);
+        } catch (IOException e) {
+            // Not supported on all file systems
+            LOGGER.fine("Could not restrict the permissions of " + folder + " to its owner: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the argument quoted so it can be used in a command file. Quotes in the argument
+     * are escaped with a backslash, and backslashes in front of a quote are doubled.
+     */
+    static String quoteCommandFileArgument(String argument) {
+        if ((argument.length() > 0) && (argument.indexOf(' ') == -1) && (argument.indexOf('\t') == -1) && (argument.indexOf('"') == -1)) {
+            return argument;
+        }
+        StringBuilder builder = new StringBuilder("\"");
+        int backslashes = 0;
+        for (int i = 0; i < argument.length(); i++) {
+            char c = argument.charAt(i);
+            if (c == '\\') {
+                backslashes++;
+            } else {
+                if (c == '"') {
+                    appendBackslashes(builder, backslashes + 1);
+                }
+                backslashes = 0;
+            }
+            builder.append(c);
+        }
+        appendBackslashes(builder, backslashes);
+        return builder.append('"').toString();
+    }
+
+    private static void appendBackslashes(StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append('\\');
         }
     }
 }
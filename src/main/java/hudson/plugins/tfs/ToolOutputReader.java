@@ -0,0 +1,189 @@
+package hudson.plugins.tfs;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.AbortException;
+import hudson.Proc;
+import hudson.model.TaskListener;
+import hudson.plugins.tfs.util.BoundedPipe;
+
+/**
+ * Reader that reads the console output from a running TF command line process.
+ * <p>
+ * The output is read through a {@link BoundedPipe} while the process is still running,
+ * which means that parsing can start directly and that only a small part of the output is
+ * kept in memory at any time. The exit code of the process is checked when the end of the
+ * output has been reached (or when the reader is closed), and if it is not a successful exit
+ * code an {@link AbortException} is thrown from the read or close call.
+ * <p>
+ * The process is killed if the reading thread is interrupted, or if the reader is closed
+ * before the end of the output has been reached, so a command is never left running
+ * after the caller has given up on it.
+ */
+public class ToolOutputReader extends Reader {
+
+    private static final Logger LOGGER = Logger.getLogger(ToolOutputReader.class.getName());
+
+    private final Proc proc;
+    private final BoundedPipe pipe;
+    private final TaskListener listener;
+    private final String commandName;
+    private final Reader reader;
+    private final Thread waiter;
+
+    private volatile int exitCode;
+    private volatile IOException joinException;
+    private volatile boolean endOfOutput;
+    private boolean exitCodeChecked;
+    private boolean killed;
+
+    ToolOutputReader(Proc proc, BoundedPipe pipe, TaskListener listener, String commandName) {
+        this.proc = proc;
+        this.pipe = pipe;
+        this.listener = listener;
+        this.commandName = commandName;
+        this.reader = new InputStreamReader(pipe.getInputStream());
+        waiter = new Thread("TFS command waiter for '" + commandName + "'") {
+            @Override
+            public void run() {
+                waitForProcess();
+            }
+        };
+        waiter.setDaemon(true);
+        waiter.start();
+    }
+
+    private void waitForProcess() {
+        try {
+            exitCode = this.proc.join();
+        } catch (IOException e) {
+            joinException = e;
+        } catch (InterruptedException e) {
+            InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the TFS command");
+            exception.initCause(e);
+            joinException = exception;
+        } finally {
+            pipe.closeWriter();
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int read;
+        try {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while reading the output of the TFS command");
+            }
+            read = reader.read(cbuf, off, len);
+        } catch (InterruptedIOException e) {
+            kill();
+            throw e;
+        }
+        if (read == -1) {
+            endOfOutput = true;
+            checkExitCode();
+        }
+        return read;
+    }
+
+    /**
+     * Waits for the command that writes to the reader to complete, and closes the reader.
+     * The output of the command is read and discarded, as closing the reader before
+     * the end of the output has been reached kills the command.
+     * @param reader the reader containing the console output of the command
+     */
+    public static void waitFor(Reader reader) throws IOException {
+        try {
+            char[] buffer = new char[4096];
+            while (reader.read(buffer) != -1) {
+                // The output is not used
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Closes the reader. If the end of the output has not been reached the process is killed,
+     * and the exit code of the process is checked after it has completed.
+     */
+    @Override
+    public void close() throws IOException {
+        pipe.closeReader();
+        if (!endOfOutput) {
+            kill();
+        }
+        checkExitCode();
+    }
+
+    /**
+     * Stops the process and closes the reader without checking the exit code.
+     * This is used when the caller has read all the output it needs
+     * and there is no need to wait for the process to complete.
+     */
+    public void abort() throws IOException, InterruptedException {
+        pipe.closeReader();
+        synchronized (this) {
+            exitCodeChecked = true;
+            if (killed) {
+                return;
+            }
+            killed = true;
+        }
+        proc.kill();
+    }
+
+    /**
+     * Kills the process, unless it has already been killed. The interrupted flag of the
+     * calling thread is cleared while the process is killed, as killing a process on
+     * a remote node is a remote call.
+     */
+    private void kill() {
+        synchronized (this) {
+            if (killed) {
+                return;
+            }
+            killed = true;
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            proc.kill();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not kill the TFS command '%s'", commandName), e);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void checkExitCode() throws IOException {
+        if (exitCodeChecked) {
+            return;
+        }
+        exitCodeChecked = true;
+        try {
+            waiter.join();
+        } catch (InterruptedException e) {
+            kill();
+            InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting for the TFS command");
+            exception.initCause(e);
+            throw exception;
+        }
+        if (joinException != null) {
+            throw joinException;
+        }
+        LOGGER.log(Level.FINE, String.format("The TFS command '%s' returned with an error code of %d", commandName, exitCode));
+        if ((exitCode != TfTool.SUCCESS_EXIT_CODE) && (exitCode != TfTool.PARTIAL_SUCCESS_EXIT_CODE)) {
+            listener.fatalError(String.format("Executable returned an unexpected result code [%d]", exitCode));
+            throw new AbortException();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package hudson.plugins.tfs;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import hudson.FilePath;
+import hudson.Util;
+
+/**
+ * Pool of TFS workspaces on the nodes, that are shared by jobs that map the same project paths.
+ * <p>
+ * Instead of one TFS workspace and one full copy of the files for every job on a node, the files
+ * are retrieved into a pooled workspace folder in the root folder of the node. The changed files are then
+ * copied from the pooled folder into the Hudson workspace of the job. A pooled workspace is leased
+ * by one build at a time, if all pooled workspaces with the same mappings are leased a new one is
+ * added to the pool. Pooled workspaces are only shared by jobs that use the same credentials, as 
+ * a TFS workspace belongs to the user that created it.
+ * <p>
+ * The leases are only kept in memory on the master. Builds do not survive a restart of Hudson,
+ * so every pooled workspace is free again after a restart. Leasing does not access the node,
+ * so a slow node does not hold up the builds on other nodes.
+ */
+public class WorkspacePool {
+
+    /** Prefix of the names of all pooled workspaces */
+    public static final String WORKSPACE_NAME_PREFIX = "Hudson-pool-";
+
+    static final String FOLDER_NAME = ".tfs-pool";
+
+    private final Set<String> leasedWorkspaces = new HashSet<String>();
+
+    /**
+     * Leases a pooled workspace that maps the project paths to the local path.
+     * The lease must be released when the files have been copied to the Hudson workspace.
+     * The folder of the lease is not created, that is left to the caller.
+     * @param nodeName the name of the node the build is on
+     * @param nodeRoot the root folder of the node, the pool is in it; null if the pool should be next
+     * to the Hudson workspace
+     * @param userName the name of the user that owns the pooled workspace
+     * @param hudsonWorkspace the Hudson workspace of the job
+     * @return the lease of the workspace
+     */
+    public synchronized Lease lease(String nodeName, FilePath nodeRoot, String serverUrl, String userName, 
+            String projectPath, String localPath, FilePath hudsonWorkspace) {
+        FilePath poolFolder = getPoolFolder(nodeRoot, hudsonWorkspace);
+        String mappingsDigest = Util.getDigestOf(serverUrl + "|" + Util.fixNull(userName) + "|" + projectPath + "|" + localPath + "|" + poolFolder.getRemote()).substring(0, 8);
+        String node = (Util.fixEmpty(nodeName) == null ? "master" : nodeName).replaceAll("[\"/:<>\\|\\*\\?\\s]+", "_");
+
+        int index = 1;
+        while (leasedWorkspaces.contains(getWorkspaceName(node, mappingsDigest, index))) {
+            index++;
+        }
+        String workspaceName = getWorkspaceName(node, mappingsDigest, index);
+        Lease lease = new Lease(workspaceName, poolFolder.child(mappingsDigest + "-" + index),
+                poolFolder.child("mirrors").child(Util.getDigestOf(hudsonWorkspace.getRemote()) + ".txt"));
+        leasedWorkspaces.add(workspaceName);
+        return lease;
+    }
+
+    /**
+     * Releases the leased workspace so other builds can use it
+     */
+    public synchronized void release(Lease lease) {
+        leasedWorkspaces.remove(lease.getWorkspaceName());
+    }
+
+    private static FilePath getPoolFolder(FilePath nodeRoot, FilePath hudsonWorkspace) {
+        if (nodeRoot != null) {
+            return nodeRoot.child(FOLDER_NAME);
+        }
+        FilePath parent = hudsonWorkspace.getParent();
+        return (parent != null ? parent : hudsonWorkspace).child(FOLDER_NAME);
+    }
+
+    private static String getWorkspaceName(String node, String mappingsDigest, int index) {
+        return WORKSPACE_NAME_PREFIX + node + "-" + mappingsDigest + "-" + index;
+    }
+
+    /**
+     * Returns if the workspace belongs to the pool, and may be in use by other jobs
+     */
+    public static boolean isPooled(String workspaceName) {
+        return (workspaceName != null) && workspaceName.startsWith(WORKSPACE_NAME_PREFIX);
+    }
+
+    public static class Lease {
+        private final String workspaceName;
+        private final FilePath folder;
+        private final FilePath mirrorManifest;
+
+        Lease(String workspaceName, FilePath folder, FilePath mirrorManifest) {
+            this.workspaceName = workspaceName;
+            this.folder = folder;
+            this.mirrorManifest = mirrorManifest;
+        }
+
+        public String getWorkspaceName() {
+            return workspaceName;
+        }
+
+        /**
+         * Returns the local folder that the pooled workspace is mapped in
+         */
+        public FilePath getFolder() {
+            return folder;
+        }
+
+        /**
+         * Returns the file that lists the files that have been copied to the Hudson workspace of the job
+         */
+        public FilePath getMirrorManifest() {
+            return mirrorManifest;
+        }
+    }
+}
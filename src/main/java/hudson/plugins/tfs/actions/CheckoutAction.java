@@ -7,27 +7,260 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import hudson.FilePath;
+import hudson.plugins.tfs.commands.ParseHandler;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.model.Project;
 import hudson.plugins.tfs.model.Server;
 import hudson.plugins.tfs.model.Workspace;
 import hudson.plugins.tfs.model.Workspaces;
 import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.plugins.tfs.util.ServerConcurrencyLimiter;
+import hudson.plugins.tfs.util.TrashFolder;
 
 public class CheckoutAction {
 
+    /** 
+     * System property that disables getting the files of all mapped projects with one get command,
+     * the files of each project will then be retrieved with a separate get command.
+     */
+    public static final String DISABLE_BATCHED_GET = "tfs.checkout.skipbatchedget";
+
     private final WorkspaceConfiguration workspaceConfiguration;
     private final boolean useUpdate;
+    private final int parallelism;
 
     public CheckoutAction(WorkspaceConfiguration workspaceConfiguration, boolean useUpdate) {
+        this(workspaceConfiguration, useUpdate, 1);
+    }
+
+    /**
+     * @param parallelism the max number of mapped projects whose history is retrieved at the same time, while 
+     * the files of all projects are retrieved; 1 retrieves the files first and then the history of one project 
+     * at a time. The number of TF commands that parallel checkouts run at the same time against the server is 
+     * also limited by the {@link ServerConcurrencyLimiter}.
+     */
+    public CheckoutAction(WorkspaceConfiguration workspaceConfiguration, boolean useUpdate, int parallelism) {
         this.workspaceConfiguration = workspaceConfiguration;
         this.useUpdate = useUpdate;
+        this.parallelism = Math.max(1, parallelism);
     }
 
     public List<ChangeSet> checkout(Server server, FilePath workspacePath, Calendar lastBuildTimestamp) throws IOException, InterruptedException, ParseException {
+        return checkout(server, workspacePath, lastBuildTimestamp, null);
+    }
+
+    /**
+     * Checks out the files from the server and returns the change sets since the last build. The files and 
+     * the history from the change set number are retrieved as of the latest change set when the checkout starts.
+     * @param lastBuildTimestamp the time of the last build; null if there is no last build
+     * @param lastBuildChangeSetNumber the highest change set number that the last build saw; null if it is unknown.
+     * If it is known, the history is retrieved from the change set number instead of from the last build time.
+     * @return the change sets since the last build, an empty list if there is no last build
+     */
+    public List<ChangeSet> checkout(Server server, FilePath workspacePath, Calendar lastBuildTimestamp, Integer lastBuildChangeSetNumber) throws IOException, InterruptedException, ParseException {
+        final List<ChangeSet> changes = new ArrayList<ChangeSet>();
+        checkout(server, workspacePath, lastBuildTimestamp, lastBuildChangeSetNumber, new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                changes.add(changeSet);
+                return true;
+            }
+        });
+        return changes;
+    }
+
+    /**
+     * Checks out the files from the server and passes the change sets since the last build to the handler, 
+     * oldest change set first for each project. If the history is retrieved from the change set number, the
+     * change sets are passed to the handler while the history is read. When several projects are checked 
+     * out in parallel, the handler is called by one thread at a time, but the change sets of the projects
+     * may be interleaved.
+     * <p>
+     * The latest change set is retrieved when the checkout starts, and the files and the history from the change
+     * set number are retrieved as of that change set. A change set that is committed during the checkout is
+     * therefore neither in the files nor in the history, and is seen by the next build.
+     * @param lastBuildTimestamp the time of the last build; null if there is no last build
+     * @param lastBuildChangeSetNumber the highest change set number that the last build saw; null if it is unknown.
+     * @param handler the handler that receives the change sets since the last build
+     * @return the change set number that the files were retrieved as of; 0 if there are no change sets under 
+     * the project paths
+     */
+    public int checkout(Server server, FilePath workspacePath, Calendar lastBuildTimestamp, Integer lastBuildChangeSetNumber, 
+            ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
+        
+        Map<Project, String> projectMappings = getProjectMappings(server);
+        Workspace workspace = setupWorkspace(server, workspacePath, projectMappings);
+        int changeSetNumber = getLatestChangeSetNumber(server);
+        
+        if (isParallel(projectMappings)) {
+            checkoutInParallel(server, workspace, projectMappings, lastBuildTimestamp, lastBuildChangeSetNumber, changeSetNumber, handler);
+            return changeSetNumber;
+        }
+        getFiles(workspace, projectMappings, changeSetNumber);
+        for (Project project : projectMappings.keySet()) {
+            getHistory(project, lastBuildTimestamp, lastBuildChangeSetNumber, changeSetNumber, handler);
+        }
+        return changeSetNumber;
+    }
+
+    private boolean isParallel(Map<Project, String> projectMappings) {
+        return (parallelism > 1) && (projectMappings.size() > 1);
+    }
+
+    /**
+     * Gets the files of all mapped projects with one get command, as all projects are mapped in the 
+     * same workspace, or with one get command per project if the batched get is disabled.
+     */
+    private void getFiles(Workspace workspace, Map<Project, String> projectMappings, int changeSetNumber) throws IOException, InterruptedException {
+        if ((projectMappings.size() > 1) && !Boolean.valueOf(System.getProperty(DISABLE_BATCHED_GET))) {
+            workspace.getFiles(new ArrayList<String>(new TreeSet<String>(projectMappings.values())), changeSetNumber);
+            return;
+        }
+        for (Entry<Project, String> mapping : projectMappings.entrySet()) {
+            mapping.getKey().getFiles(mapping.getValue(), changeSetNumber);
+        }
+    }
+
+    /**
+     * Passes the change sets of the project since the last build to the handler, oldest change set first
+     * @param changeSetNumber the change set number to retrieve the history from the last build change set number up to
+     */
+    private void getHistory(Project project, Calendar lastBuildTimestamp, Integer lastBuildChangeSetNumber, int changeSetNumber,
+            ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
+        if (lastBuildChangeSetNumber != null) {
+            if (changeSetNumber > lastBuildChangeSetNumber) {
+                project.getDetailedHistory(lastBuildChangeSetNumber, changeSetNumber, handler);
+            }
+        } else if (lastBuildTimestamp != null) {
+            for (ChangeSet changeSet : project.getDetailedHistory(lastBuildTimestamp, Calendar.getInstance())) {
+                if (!handler.handle(changeSet)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the history of the projects in parallel, while the files are retrieved on this thread. The history 
+     * does not depend on the workspace, so it can be read while the get updates the workspace. The get and the
+     * history commands share the permits of the {@link ServerConcurrencyLimiter}.
+     * @param handler the handler that receives the change sets while the history is read, one thread at a time
+     */
+    private void checkoutInParallel(Server server, Workspace workspace, Map<Project, String> projectMappings, 
+            final Calendar lastBuildTimestamp, final Integer lastBuildChangeSetNumber, final int changeSetNumber, 
+            ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
         
+        final ParseHandler<ChangeSet> synchronizedHandler = new SynchronizedParseHandler<ChangeSet>(handler);
+        final Semaphore serverSemaphore = ServerConcurrencyLimiter.getSemaphore(server.getUrl());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, projectMappings.size()));
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Project project : projectMappings.keySet()) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        serverSemaphore.acquire();
+                        try {
+                            getHistory(project, lastBuildTimestamp, lastBuildChangeSetNumber, changeSetNumber, synchronizedHandler);
+                            return null;
+                        } finally {
+                            serverSemaphore.release();
+                        }
+                    }
+                }));
+            }
+            serverSemaphore.acquire();
+            try {
+                getFiles(workspace, projectMappings, changeSetNumber);
+            } finally {
+                serverSemaphore.release();
+            }
+            for (Future<Void> future : futures) {
+                getResult(future);
+            }
+        } finally {
+            // Stops any remaining history commands if the get or one of them failed
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Handler that passes the change sets to another handler, one thread at a time
+     */
+    private static class SynchronizedParseHandler<T> implements ParseHandler<T> {
+        private final ParseHandler<T> handler;
+
+        public SynchronizedParseHandler(ParseHandler<T> handler) {
+            this.handler = handler;
+        }
+
+        public synchronized boolean handle(T element) throws IOException {
+            return handler.handle(element);
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException, ParseException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            IOException exception = new IOException("Could not retrieve the history of the project");
+            exception.initCause(cause);
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns the latest change set of each project in the workspace configuration
+     * @return the latest change sets; projects without change sets are not included
+     */
+    public List<ChangeSet> getLatestChangeSets(Server server) throws IOException, InterruptedException, ParseException {
+        List<ChangeSet> latestChangeSets = new ArrayList<ChangeSet>();
+        for(Entry<String, String> mapping : workspaceConfiguration.getProjectMappings()) {
+            ChangeSet latestChangeSet = server.getProject(mapping.getKey()).getLatestChangeSet();
+            if (latestChangeSet != null) {
+                latestChangeSets.add(latestChangeSet);
+            }
+        }
+        return latestChangeSets;
+    }
+
+    /**
+     * Returns the highest change set number of the latest change sets of the projects in the workspace configuration
+     * @return the latest change set number; 0 if there are no change sets
+     */
+    private int getLatestChangeSetNumber(Server server) throws IOException, InterruptedException, ParseException {
+        int latestChangeSetNumber = 0;
+        for (ChangeSet changeSet : getLatestChangeSets(server)) {
+            latestChangeSetNumber = Math.max(latestChangeSetNumber, Integer.parseInt(changeSet.getVersion()));
+        }
+        return latestChangeSetNumber;
+    }
+
+    /**
+     * Creates or updates the workspace and its mappings
+     * @param projectMappings the projects and the local folders they are mapped to
+     * @return the workspace
+     */
+    private Workspace setupWorkspace(Server server, FilePath workspacePath, Map<Project, String> projectMappings) throws IOException, InterruptedException, ParseException {
         String workspaceName = workspaceConfiguration.getWorkspaceName();
         Workspaces workspaces = server.getWorkspaces();
         
@@ -36,33 +269,21 @@ public class CheckoutAction {
             workspaces.deleteWorkspace(workspace);
         }
 
-        Map<Project, String> projectMappings = getProjectMappings(server);
-        
         Workspace workspace;
         if (! workspaces.exists(workspaceName)) {
+            TrashFolder trash = TrashFolder.forWorkspace(workspacePath);
             for(Project project : projectMappings.keySet()) {
                 FilePath localFolderPath = workspacePath.child(projectMappings.get(project));
                 if (!useUpdate && localFolderPath.exists()) {
-                    localFolderPath.deleteContents();
+                    // The old files are deleted in the background, so the get can start directly
+                    trash.deleteContents(localFolderPath);
                 }
             }
-            workspace = workspaces.newWorkspace(workspaceName);
-            for(Project project : projectMappings.keySet()) {
-                workspace.mapWorkfolder(project, projectMappings.get(project));
-            }
+            workspace = workspaces.newWorkspace(workspaceName, projectMappings);
         } else {
             workspace = workspaces.getWorkspace(workspaceName);
         }
-        
-        List<ChangeSet> changes = new ArrayList<ChangeSet>();
-        for(Project project : projectMappings.keySet()) {
-            project.getFiles(projectMappings.get(project));
-        
-            if (lastBuildTimestamp != null) {
-                changes.addAll(project.getDetailedHistory(lastBuildTimestamp, Calendar.getInstance()));
-            }
-        }
-        return changes;
+        return workspace;
     }
 
     private Map<Project, String> getProjectMappings(Server server)
@@ -0,0 +1,141 @@
+package hudson.plugins.tfs.actions;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+import hudson.plugins.tfs.ChangeLogHandler;
+import hudson.plugins.tfs.ChangeSetWriter;
+import hudson.plugins.tfs.TfTool;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.remoting.RemoteOutputStream;
+import hudson.remoting.VirtualChannel;
+
+/**
+ * Runs the whole checkout on the node that the workspace is on.
+ * <p>
+ * When the checkout is done from the master, every TF command is launched through
+ * the remoting channel and its console output is sent back to the master to be parsed. This 
+ * action instead launches the TF tool, parses the history and writes the change log on the node, 
+ * and only the compressed change log is streamed back to the master while it is written.
+ */
+public class RemoteCheckoutAction implements FileCallable<Integer> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String tfExecutable;
+    private final String proxyUrl;
+    private final String serverUrl;
+    private final String userName;
+    private final String userPassword;
+    private final WorkspaceConfiguration workspaceConfiguration;
+    private final boolean useUpdate;
+    private final int parallelism;
+    private final Calendar lastBuildTimestamp;
+    private final Integer lastBuildChangeSetNumber;
+    private final OutputStream compressedChangeLog;
+    private final TaskListener listener;
+
+    /**
+     * @param proxyUrl the url of the Team Foundation Server proxy; null if there is no proxy
+     * @param parallelism the max number of mapped projects that are checked out at the same time
+     * @param lastBuildTimestamp the time of the last build; null if there is no last build
+     * @param lastBuildChangeSetNumber the highest change set number that the last build saw; null if it is unknown.
+     * @param compressedChangeLog the stream on the master that the gzipped change log is written to, it is
+     * closed when the checkout is done; see {@link #createChangeLogStream(File)}
+     */
+    public RemoteCheckoutAction(String tfExecutable, String proxyUrl, Server server, WorkspaceConfiguration workspaceConfiguration, boolean useUpdate, int parallelism,
+            Calendar lastBuildTimestamp, Integer lastBuildChangeSetNumber, OutputStream compressedChangeLog, TaskListener listener) {
+        this.tfExecutable = tfExecutable;
+        this.proxyUrl = proxyUrl;
+        this.serverUrl = server.getUrl();
+        this.userName = server.getUserName();
+        this.userPassword = server.getUserPassword();
+        this.workspaceConfiguration = workspaceConfiguration;
+        this.useUpdate = useUpdate;
+        this.parallelism = parallelism;
+        this.lastBuildTimestamp = lastBuildTimestamp;
+        this.lastBuildChangeSetNumber = lastBuildChangeSetNumber;
+        this.compressedChangeLog = compressedChangeLog;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the change set number that the files and the history were checked out as of
+     * @return the change set number; 0 if there were no change sets
+     */
+    public Integer invoke(File workspace, VirtualChannel channel) throws IOException {
+        FilePath workspacePath = new FilePath(workspace);
+        Server server = new Server(new TfTool(tfExecutable, new Launcher.LocalLauncher(listener), listener, workspacePath, proxyUrl), 
+                serverUrl, userName, userPassword);
+        CheckoutAction action = new CheckoutAction(workspaceConfiguration, useUpdate, parallelism);
+        try {
+            // The change sets are streamed to the master while the history is parsed
+            ChangeSetWriter writer = new ChangeSetWriter();
+            Writer output = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(compressedChangeLog), "UTF-8"));
+            ChangeLogHandler handler = new ChangeLogHandler(writer, output);
+            try {
+                writer.writeHeader(output);
+                return action.checkout(server, workspacePath, lastBuildTimestamp, lastBuildChangeSetNumber, handler);
+            } finally {
+                try {
+                    // The change log is completed even if the checkout fails, so it can be read
+                    writer.writeFooter(output);
+                } finally {
+                    output.close();
+                }
+            }
+        } catch (ParseException pe) {
+            listener.fatalError(pe.getMessage());
+            throw new AbortException();
+        } catch (InterruptedException e) {
+            InterruptedIOException exception = new InterruptedIOException("Interrupted while checking out files from TFS");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns a stream to the compressed change log file on the master, that can be passed to the
+     * action on the node
+     */
+    public static OutputStream createChangeLogStream(File compressedChangeLogFile) throws IOException {
+        return new RemoteOutputStream(new FileOutputStream(compressedChangeLogFile));
+    }
+
+    /**
+     * Uncompresses the change log that was written by the action into the change log file
+     */
+    public static void uncompressChangeLog(File compressedChangeLogFile, File changelogFile) throws IOException {
+        InputStream input = new GZIPInputStream(new FileInputStream(compressedChangeLogFile));
+        try {
+            OutputStream output = new FileOutputStream(changelogFile);
+            try {
+                IOUtils.copy(input, output);
+            } finally {
+                output.close();
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package hudson.plugins.tfs.actions;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+
+import hudson.FilePath;
+import hudson.plugins.tfs.model.Project;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfs.model.Workspace;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.plugins.tfs.model.WorkspaceMapping;
+import hudson.plugins.tfs.model.Workspaces;
+import hudson.plugins.tfs.util.TrashFolder;
+
+/**
+ * Updates the mappings of an existing workspace so they match the workspace configuration.
+ * <p>
+ * Only the mappings that differ from the configuration are unmapped or mapped, so folders that are
+ * mapped the same way keep their local files and do not have to be retrieved again. The local files
+ * in unmapped folders are removed, unless the folder contains a folder that is still mapped.
+ */
+public class UpdateWorkspaceMappingsAction {
+
+    private final WorkspaceConfiguration workspaceConfiguration;
+
+    public UpdateWorkspaceMappingsAction(WorkspaceConfiguration workspaceConfiguration) {
+        this.workspaceConfiguration = workspaceConfiguration;
+    }
+
+    /**
+     * Updates the mappings of the workspace
+     * @param workspacePath the Hudson workspace that relative work folders are mapped in
+     * @return true if the workspace exists and its mappings are up to date; false if there is no workspace
+     */
+    public boolean update(Server server, FilePath workspacePath) throws IOException, InterruptedException, ParseException {
+        Workspaces workspaces = server.getWorkspaces();
+        if (!workspaces.exists(workspaceConfiguration.getWorkspaceName())) {
+            return false;
+        }
+        Workspace workspace = workspaces.getWorkspace(workspaceConfiguration.getWorkspaceName());
+        String root = normalizePath(workspacePath.getRemote());
+
+        Map<String, Entry<String, String>> configuredMappings = new HashMap<String, Entry<String, String>>();
+        Set<String> configuredFolders = new HashSet<String>();
+        for (Entry<String, String> mapping : workspaceConfiguration.getProjectMappings()) {
+            String localPath = resolvePath(root, mapping.getValue());
+            configuredMappings.put(getKey(mapping.getKey(), localPath), mapping);
+            configuredFolders.add(localPath);
+        }
+
+        List<String> unmappedFolders = new ArrayList<String>();
+        for (WorkspaceMapping mapping : workspace.getMappings()) {
+            if (configuredMappings.remove(getKey(mapping.getProjectPath(), mapping.getLocalPath())) == null) {
+                unmappedFolders.add(mapping.getLocalPath());
+            }
+        }
+
+        // The mappings that are left in the configured mappings are not in the workspace
+        Map<Project, String> newMappings = new HashMap<Project, String>();
+        for (Entry<String, String> mapping : configuredMappings.values()) {
+            newMappings.put(server.getProject(mapping.getKey()), mapping.getValue());
+        }
+        if (unmappedFolders.isEmpty() && newMappings.isEmpty()) {
+            return true;
+        }
+        workspace.updateWorkfolders(unmappedFolders, newMappings);
+
+        TrashFolder trash = TrashFolder.forWorkspace(workspacePath);
+        for (String unmappedFolder : unmappedFolders) {
+            String localPath = normalizePath(unmappedFolder);
+            if (isInFolder(localPath, root) && !containsAny(localPath, configuredFolders)) {
+                FilePath localFolderPath = new FilePath(workspacePath.getChannel(), unmappedFolder.trim());
+                if (localFolderPath.exists()) {
+                    trash.deleteContents(localFolderPath);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String getKey(String projectPath, String localPath) {
+        return normalizePath(projectPath) + "|" + normalizePath(localPath);
+    }
+
+    private static boolean isInFolder(String path, String folder) {
+        return path.equals(folder) || path.startsWith(folder + "/");
+    }
+
+    private static boolean containsAny(String folder, Set<String> paths) {
+        for (String path : paths) {
+            if (path.startsWith(folder + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the local path of a work folder, relative work folders are resolved against the root
+     */
+    static String resolvePath(String root, String workFolder) {
+        String path = workFolder.trim();
+        if (path.startsWith("/") || path.startsWith("\\") || path.matches("[a-zA-Z]:.*")) {
+            return normalizePath(path);
+        }
+        return normalizePath(root + "/" + path);
+    }
+
+    /**
+     * Returns the path with '/' as separator and without "." and ".." segments, in lower case as TFS
+     * does not care about the case of server or local paths.
+     */
+    static String normalizePath(String path) {
+        String trimmedPath = path.trim().replace('\\', '/');
+        LinkedList<String> segments = new LinkedList<String>();
+        for (String segment : trimmedPath.split("/")) {
+            if ((segment.length() == 0) || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..") && !segments.isEmpty()) {
+                segments.removeLast();
+            } else {
+                segments.add(segment);
+            }
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String segment : segments) {
+            if ((builder.length() > 0) || trimmedPath.startsWith("/")) {
+                builder.append('/');
+            }
+            builder.append(segment);
+        }
+        return builder.toString().toLowerCase();
+    }
+}
@@ -24,6 +24,7 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
     private final String projectPath;
     private final Calendar toTimestamp;
     private final Calendar fromTimestamp;
+    private final int fromChangeSetNumber;
     
     /**
      * 
@@ -37,6 +38,22 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
         this.projectPath = projectPath;
         this.fromTimestamp = fromTimestamp;
         this.toTimestamp = toTimestamp;
+        this.fromChangeSetNumber = 0;
+    }
+
+    /**
+     * 
+     * @param projectPath the project path to get the history for
+     * @param fromChangeSetNumber the change set number to get history after, this change set 
+     * is not included in the history.
+     */
+    public BriefHistoryCommand(ServerConfigurationProvider provider,
+            String projectPath, int fromChangeSetNumber) {
+        super(provider);
+        this.projectPath = projectPath;
+        this.fromTimestamp = null;
+        this.toTimestamp = null;
+        this.fromChangeSetNumber = fromChangeSetNumber;
     }
 
     /**
@@ -48,9 +65,15 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
         arguments.add("history");
         arguments.add(projectPath);
         arguments.add("-noprompt");
-        arguments.add(String.format("-version:D%s~D%s", 
-                DateUtil.TFS_DATETIME_FORMATTER.get().format(fromTimestamp.getTime()), 
-                DateUtil.TFS_DATETIME_FORMATTER.get().format(toTimestamp.getTime())));
+        if (fromTimestamp == null) {
+            // The range starts on the already seen change set, as a range starting with a change set that
+            // does not exist yet is an error. The change set is filtered out when parsing.
+            arguments.add(String.format("-version:C%d~T", fromChangeSetNumber));
+        } else {
+            arguments.add(String.format("-version:D%s~D%s", 
+                    DateUtil.TFS_DATETIME_FORMATTER.get().format(fromTimestamp.getTime()), 
+                    DateUtil.TFS_DATETIME_FORMATTER.get().format(toTimestamp.getTime())));
+        }
         arguments.add("-recursive");
         arguments.add("-format:brief");
         addServerArgument(arguments);
@@ -72,7 +95,11 @@ public class BriefHistoryCommand extends AbstractCommand implements ParseableCom
                 DateUtil.parseDate(parser.getColumn(2)),
                 parser.getColumn(1),
                 Util.fixNull(parser.getColumn(3)));
-            if (changeset.getDate().after(fromTimestamp.getTime())) { 
+            if (fromTimestamp == null) {
+                if (Integer.parseInt(changeset.getVersion()) > fromChangeSetNumber) {
+                    list.add(changeset);
+                }
+            } else if (changeset.getDate().after(fromTimestamp.getTime())) { 
                 list.add(changeset);
             }
         }
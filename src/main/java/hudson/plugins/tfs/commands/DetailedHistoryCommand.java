@@ -14,30 +14,29 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-public class DetailedHistoryCommand extends AbstractCommand implements ParseableCommand<List<ChangeSet>> {
+public class DetailedHistoryCommand extends AbstractCommand implements ParseableCommand<List<ChangeSet>>, StreamingParseableCommand<ChangeSet> {
 
     // Setting this system property will skip the date chek in parsing that makes
     // sure that a change set is within the date range. See CC-735 reference.
     public static final String IGNORE_DATE_CHECK_ON_CHANGE_SET = "tfs.history.skipdatecheck";
     
+    // Setting this system property will not ask the TF tool to sort the history with the oldest
+    // change set first, for clients that do not support the sort option. The history is then
+    // sorted in memory instead.
+    public static final String DISABLE_SORTING_IN_TOOL = "tfs.history.skipsort";
+    
     private static final String CHANGESET_SEPERATOR = "------------";
     
-    /**
-     * The magic regex to identify the key data elements within the
-     * changeset
-     */
-    private static final Pattern PATTERN_CHANGESET = Pattern.compile("^[^:]*:[ \t]([0-9]*)\n"
-            + "[^:]*:[ \t](.*)\n[^:]*:[ \t](.*)\n"
-            + "[^:]*:(?s)(.*)\n\n[^\n :]*:(?=\n  )(.*)\n\n");
-
-    /**
-     * An additional regex to split the items into their parts (change type
-     * and filename)
-     */
-    private static final Pattern PATTERN_ITEM = Pattern.compile("\n  ([^$]+) (\\$/.*)");
+    private static final String INDENTATION = "  ";
+    
+    // Parts of a change set in the order they appear in the output
+    private static final int SECTION_NONE = 0;
+    private static final int SECTION_HEADER = 1;
+    private static final int SECTION_AFTER_HEADER = 2;
+    private static final int SECTION_COMMENT = 3;
+    private static final int SECTION_ITEMS = 4;
+    private static final int SECTION_OTHER = 5;
 
     private final String projectPath;
 
@@ -45,18 +44,83 @@ public class DetailedHistoryCommand extends AbstractCommand implements Parseable
 
     private final Calendar toTimestamp;
 
+    private final int fromChangeSetNumber;
+
+    private final int toChangeSetNumber;
+
     private final DateParser dateParser;
     
     private final boolean skipDateCheckInParsing;
     
+    private final boolean oldestFirst;
+    
+    private final boolean sortInTool;
+    
     public DetailedHistoryCommand(ServerConfigurationProvider configurationProvider, String projectPath, Calendar fromTimestamp, Calendar toTimestamp,
             DateParser dateParser) {
         super(configurationProvider);
         this.projectPath = projectPath;
         this.fromTimestamp = fromTimestamp;
         this.toTimestamp = toTimestamp;
+        this.fromChangeSetNumber = 0;
+        this.toChangeSetNumber = 0;
         this.dateParser = dateParser;
         this.skipDateCheckInParsing = Boolean.valueOf(System.getProperty(IGNORE_DATE_CHECK_ON_CHANGE_SET));
+        this.oldestFirst = false;
+        this.sortInTool = false;
+    }
+
+    /**
+     * Command for retrieving the history after a change set. As the range is based on
+     * change set numbers there is no need for checking the dates of the change sets.
+     * @param fromChangeSetNumber the change set number to get history after, this change set 
+     * is not included in the history.
+     * @param oldestFirst true if the TF tool should output the oldest change set first, which
+     * makes it possible to handle the change sets in order while they are parsed; false if the
+     * output should be in the default order, latest change set first.
+     */
+    public DetailedHistoryCommand(ServerConfigurationProvider configurationProvider, String projectPath, int fromChangeSetNumber,
+            boolean oldestFirst, DateParser dateParser) {
+        this(configurationProvider, projectPath, fromChangeSetNumber, 0, oldestFirst, dateParser);
+    }
+
+    /**
+     * Command for retrieving the history between two change sets.
+     * @param fromChangeSetNumber the change set number to get history after, this change set 
+     * is not included in the history.
+     * @param toChangeSetNumber the last change set number to get history for, it must be higher than the
+     * from change set number; 0 to get the history up to the latest change set.
+     * @param oldestFirst true if the TF tool should output the oldest change set first
+     */
+    public DetailedHistoryCommand(ServerConfigurationProvider configurationProvider, String projectPath, int fromChangeSetNumber,
+            int toChangeSetNumber, boolean oldestFirst, DateParser dateParser) {
+        super(configurationProvider);
+        this.projectPath = projectPath;
+        this.fromTimestamp = null;
+        this.toTimestamp = null;
+        this.fromChangeSetNumber = fromChangeSetNumber;
+        this.toChangeSetNumber = toChangeSetNumber;
+        this.dateParser = dateParser;
+        this.skipDateCheckInParsing = true;
+        this.oldestFirst = oldestFirst;
+        this.sortInTool = oldestFirst && !Boolean.valueOf(System.getProperty(DISABLE_SORTING_IN_TOOL));
+    }
+
+    public DetailedHistoryCommand(ServerConfigurationProvider configurationProvider, String projectPath, int fromChangeSetNumber,
+            DateParser dateParser) {
+        this(configurationProvider, projectPath, fromChangeSetNumber, false, dateParser);
+    }
+
+    public DetailedHistoryCommand(ServerConfigurationProvider provider, String projectPath, int fromChangeSetNumber, int toChangeSetNumber, boolean oldestFirst) {
+        this(provider, projectPath, fromChangeSetNumber, toChangeSetNumber, oldestFirst, new DateParser());
+    }
+
+    public DetailedHistoryCommand(ServerConfigurationProvider provider, String projectPath, int fromChangeSetNumber, boolean oldestFirst) {
+        this(provider, projectPath, fromChangeSetNumber, oldestFirst, new DateParser());
+    }
+
+    public DetailedHistoryCommand(ServerConfigurationProvider provider, String projectPath, int fromChangeSetNumber) {
+        this(provider, projectPath, fromChangeSetNumber, false, new DateParser());
     }
 
     public DetailedHistoryCommand(ServerConfigurationProvider provider,  
@@ -69,121 +133,214 @@ public class DetailedHistoryCommand extends AbstractCommand implements Parseable
         arguments.add("history");
         arguments.add(projectPath);
         arguments.add("-noprompt");
-        arguments.add(String.format("-version:D%s~D%s", 
-                DateUtil.TFS_DATETIME_FORMATTER.get().format(fromTimestamp.getTime()), 
-                DateUtil.TFS_DATETIME_FORMATTER.get().format(toTimestamp.getTime())));
+        if ((fromTimestamp == null) && (toChangeSetNumber > 0)) {
+            // Change set numbers are sequential on the server, so the change set after the already seen 
+            // change set exists when the range ends on an existing change set.
+            arguments.add(String.format("-version:C%d~C%d", fromChangeSetNumber + 1, toChangeSetNumber));
+        } else if (fromTimestamp == null) {
+            // The range starts on the already seen change set, as a range starting with a change set that
+            // does not exist yet is an error. The change set is filtered out when parsing.
+            arguments.add(String.format("-version:C%d~T", fromChangeSetNumber));
+        } else {
+            arguments.add(String.format("-version:D%s~D%s", 
+                    DateUtil.TFS_DATETIME_FORMATTER.get().format(fromTimestamp.getTime()), 
+                    DateUtil.TFS_DATETIME_FORMATTER.get().format(toTimestamp.getTime())));
+        }
         arguments.add("-recursive");
         arguments.add("-format:detailed");        
+        if (sortInTool) {
+            arguments.add("-sort:ascending");
+        }
         addServerArgument(arguments);
         addLoginArgument(arguments);
         return arguments;
     }
     
+    /**
+     * Returns the change sets in the output, ordered with the oldest change set first.
+     */
     public List<ChangeSet> parse(Reader reader) throws IOException, ParseException {
-        return parseDetailedHistoryOutput(new BufferedReader(reader), fromTimestamp.getTime());
+        final List<ChangeSet> list = new ArrayList<ChangeSet>();
+        parseDetailedHistoryOutput(new BufferedReader(reader), (fromTimestamp == null ? null : fromTimestamp.getTime()), new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                list.add(changeSet);
+                return true;
+            }
+        });
+        if (!sortInTool) {
+            Collections.reverse(list);
+        }
+        return list;
+    }
+    
+    /**
+     * Passes the change sets to the handler, the oldest change set first if the command was created
+     * to retrieve the oldest first, otherwise the latest change set first. Only the change set that is 
+     * currently parsed is kept in memory, unless the oldest change set should be first and the sorting 
+     * in the TF tool has been disabled.
+     */
+    public boolean parse(Reader reader, ParseHandler<ChangeSet> handler) throws IOException, ParseException {
+        if (oldestFirst && !sortInTool) {
+            for (ChangeSet changeSet : parse(reader)) {
+                if (!handler.handle(changeSet)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return parseDetailedHistoryOutput(new BufferedReader(reader), (fromTimestamp == null ? null : fromTimestamp.getTime()), handler);
     }
     
-    private List<ChangeSet> parseDetailedHistoryOutput(BufferedReader consoleReader, Date lastBuildDate) throws IOException, ParseException {
-        ArrayList<ChangeSet> list = new ArrayList<ChangeSet>();
+    /**
+     * Parses the detailed history output line by line.
+     * <p>
+     * A change set starts with a separator line, followed by the header lines ("Changeset:", "User:", 
+     * "Date:") up to the first empty line. After the header comes the sections, where the first 
+     * section is the comment and the second is the items. A section starts with a line that is not 
+     * indented and ends with ':', after an empty line. Any following sections, such as check-in notes and policy warnings,
+     * are ignored. The header lines and sections are identified by their order and not by their
+     * names, as the names depend on the language of the TF tool.
+     */
+    private boolean parseDetailedHistoryOutput(BufferedReader consoleReader, Date lastBuildDate, ParseHandler<ChangeSet> handler) throws IOException, ParseException {
+        int section = SECTION_NONE;
+        ChangeSet changeSet = null;
+        List<String> headerValues = new ArrayList<String>(3);
+        StringBuilder comment = new StringBuilder();
+        boolean previousLineWasEmpty = false;
         
-        StringBuilder builder = new StringBuilder();
         String line;
         int linecount = 0;
-        boolean foundAtLeastOneChangeSet = false;
-        
         while ((line = consoleReader.readLine()) != null) {
             linecount++;
             if (line.startsWith(CHANGESET_SEPERATOR)) {
-                foundAtLeastOneChangeSet = true;
-                if (linecount > 1) {
-                    // We are starting a new changeset.
-                    ChangeSet changeSet = parseChangeSetOutput(builder.toString(), lastBuildDate);
-                    if (changeSet != null) {
-                        list.add(changeSet);
+                if ((section != SECTION_NONE) && !handleChangeSet(handler, changeSet, comment, lastBuildDate, linecount)) {
+                    return false;
+                }
+                section = SECTION_HEADER;
+                changeSet = null;
+                headerValues.clear();
+                comment.setLength(0);
+                previousLineWasEmpty = false;
+                continue;
+            }
+            
+            boolean isEmptyLine = (line.trim().length() == 0);
+            switch (section) {
+            case SECTION_HEADER:
+                if (!isEmptyLine) {
+                    headerValues.add(getHeaderValue(line, linecount));
+                } else if (!headerValues.isEmpty()) {
+                    changeSet = createChangeSet(headerValues, linecount);
+                    section = SECTION_AFTER_HEADER;
+                }
+                break;
+            case SECTION_AFTER_HEADER:
+            case SECTION_COMMENT:
+            case SECTION_ITEMS:
+            case SECTION_OTHER:
+                if ((previousLineWasEmpty || (section == SECTION_AFTER_HEADER)) && isSectionStart(line)) {
+                    section = (section == SECTION_OTHER ? SECTION_OTHER : section + 1);
+                } else if (section == SECTION_COMMENT) {
+                    if (previousLineWasEmpty || (comment.length() > 0)) {
+                        comment.append('\n');
                     }
-                    builder.setLength(0);
+                    if (!isEmptyLine) {
+                        // Remove the indentation from the comment
+                        comment.append(line, (line.startsWith(INDENTATION) ? INDENTATION.length() : 0), line.length());
+                    }
+                } else if ((section == SECTION_ITEMS) && !isEmptyLine) {
+                    changeSet.add(parseItem(line, changeSet, linecount));
                 }
-            } else {
-                builder.append(line).append('\n');
+                break;
+            default:
+                // Text before the first change set
+                break;
             }
+            previousLineWasEmpty = isEmptyLine;
         }
         
-        if (foundAtLeastOneChangeSet) {
-            ChangeSet changeSet = parseChangeSetOutput(builder.toString(), lastBuildDate);
-            if (changeSet != null) {
-                list.add(changeSet);
-            }
+        if (section != SECTION_NONE) {
+            return handleChangeSet(handler, changeSet, comment, lastBuildDate, linecount);
         }
-        Collections.reverse(list);
-        return list;
+        return true;
+    }
+
+    private String getHeaderValue(String line, int linecount) throws ParseException {
+        int separatorIndex = line.indexOf(':');
+        if (separatorIndex == -1) {
+            throw new ParseException("Parse error. Unable to find the value in the change set header line \"" 
+                    + line + "\".  Please report this as a bug.", linecount);
+        }
+        return line.substring(separatorIndex + 1).trim();
     }
 
     /**
-     * Returns a change set from the string containing ONE change set
-     * @param changeSetString string containing ONE change set output
-     * @param lastBuildDate the last build date
-     * @return a change set; null if the change set was too old or invalid.
+     * Returns a change set from the header values; the change set number, user and
+     * the date. The date is the last value, as there may be other values before it.
      */
-    private ChangeSet parseChangeSetOutput(String changeSetString, Date lastBuildDate) throws ParseException {
-        ChangeSet changeset = null;
-        Matcher m = PATTERN_CHANGESET.matcher(changeSetString);
-        if (m.find()) {
-            String revision = m.group(1);
-            String userName = m.group(2).trim();
-
-            Date modifiedTime = dateParser.parseDate(m.group(3));
-            
-            // CC-735.  Ignore changesets that occured before the specified lastBuild.
-            if (!skipDateCheckInParsing && modifiedTime.compareTo(lastBuildDate) < 0) {
-                return null;
-            }
-
-            // Remove the indentation from the comment
-            String comment = m.group(4).replaceAll("\n  ", "\n");
-            if (comment.length() > 0) {
-                // remove leading "\n"
-                comment = comment.trim();
-            }
+    private ChangeSet createChangeSet(List<String> headerValues, int linecount) throws ParseException {
+        if (headerValues.size() < 3) {
+            throw new ParseException("Parse error. Unable to find the change set number, user and date in the "
+                    + "change set header " + headerValues + ".  Please report this as a bug.", linecount);
+        }
+        return new ChangeSet(headerValues.get(0), dateParser.parseDate(headerValues.get(headerValues.size() - 1)), 
+                headerValues.get(1), null);
+    }
+    
+    private boolean isSectionStart(String line) {
+        return (line.length() > 1) && !Character.isWhitespace(line.charAt(0)) && line.endsWith(":");
+    }
 
-            // Parse the items.
-            Matcher itemMatcher = PATTERN_ITEM.matcher(m.group(5));
-            while (itemMatcher.find()) {
-                if (changeset == null) {
-                    changeset = new ChangeSet(revision, modifiedTime, userName, comment);
-                }
+    /**
+     * Returns the item from an item line, ie "  edit $/path/file.txt".
+     */
+    private ChangeSet.Item parseItem(String line, ChangeSet changeSet, int linecount) throws ParseException {
+        // In a similar way to Subversion, TFS will record additions of folders etc
+        // Therefore we have to report all modifictaion by the file and not split
+        // into file and folder as there is no easy way to distinguish
+        // $/path/filename
+        // from
+        // $/path/foldername
+        //
+        int pathIndex = line.indexOf(" $/");
+        if (pathIndex == -1) {
+            // If this happens then we have a bug, output some data
+            // to make it easy to figure out what the problem was so
+            // that we can fix it.
+            throw new ParseException("Parse error. Mistakenly identified \"" + line.trim()
+                    + "\" as an item, but it does not appear to "
+                    + "be a valid TFS path.  Please report this as a bug.  Changeset = " 
+                    + changeSet.getVersion() + ".", linecount);
+        }
+        return new ChangeSet.Item(line.substring(pathIndex + 1), line.substring(0, pathIndex).trim());
+    }
 
-                // In a similar way to Subversion, TFS will record additions
-                // of folders etc
-                // Therefore we have to report all modifictaion by the file
-                // and not split
-                // into file and folder as there is no easy way to
-                // distinguish
-                // $/path/filename
-                // from
-                // $/path/foldername
-                //
-                String path = itemMatcher.group(2);
-                String action = itemMatcher.group(1).trim();
-                if (!path.startsWith("$/")) {
-                    // If this happens then we have a bug, output some data
-                    // to make it easy to figure out what the problem was so
-                    // that we can fix it.
-                    throw new ParseException("Parse error. Mistakenly identified \"" + path
-                            + "\" as an item, but it does not appear to "
-                            + "be a valid TFS path.  Please report this as a bug.  Changeset" + "data = \"\n"
-                            + changeSetString + "\n\".", itemMatcher.start());
+    /**
+     * Passes the change set to the handler, if it is not too old.
+     * @param changeSet the parsed change set; null if the change set header was never completed
+     * @param lastBuildDate the last build date; or null if the history is retrieved from a change set number
+     * @return false if the handler wants to stop the parsing; true otherwise
+     */
+    private boolean handleChangeSet(ParseHandler<ChangeSet> handler, ChangeSet changeSet, StringBuilder comment, Date lastBuildDate, int linecount) throws IOException, ParseException {
+        if (changeSet != null) {
+            if (lastBuildDate == null) {
+                if (Integer.parseInt(changeSet.getVersion()) <= fromChangeSetNumber) {
+                    return true;
                 }
-                changeset.getItems().add(new ChangeSet.Item(path, action));
+            } else if (!skipDateCheckInParsing && changeSet.getDate().compareTo(lastBuildDate) < 0) {
+                // CC-735.  Ignore changesets that occured before the specified lastBuild.
+                return true;
             }
         }
-        if (changeset == null) {
+        if ((changeSet == null) || changeSet.getItems().isEmpty()) {
             // We should always find at least one item. If we don't
             // then this will be because we have not parsed correctly.
             throw new ParseException("Parse error. Unable to find an item within "
-                    + "a changeset.  Please report this as a bug.  Changeset" 
-                    + "data = \"\n" + changeSetString + "\n\".",
-                    0);
+                    + "a changeset.  Please report this as a bug.  Changeset = " 
+                    + (changeSet == null ? "unknown" : changeSet.getVersion()) + ".",
+                    linecount);
         }
-        return changeset;
+        changeSet.setComment(comment.toString().trim());
+        return handler.handle(changeSet);
     }
 }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,15 +16,37 @@ public class GetFilesToWorkFolderCommand extends AbstractCommand implements Pars
     private static final Pattern ITEM_PATTERN = Pattern.compile("\\w+\\s+(.*)");
     private static final Pattern PATH_PATTERN = Pattern.compile("(.+):");
     
-    private final String workFolder;
+    private final List<String> workFolders;
+    private final int changeSetNumber;
     private final boolean preview;
 
-    public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, String workFolder, boolean preview) {
+    /**
+     * Gets the files of several work folders in one get command
+     * @param workFolders the work folders; they must be mapped in the same workspace
+     * @param changeSetNumber the change set to get the files of; 0 to get the latest files
+     */
+    public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, List<String> workFolders, int changeSetNumber, boolean preview) {
         super(provider);
-        this.workFolder = workFolder;
+        if (workFolders.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one work folder to get");
+        }
+        this.workFolders = workFolders;
+        this.changeSetNumber = changeSetNumber;
         this.preview = preview;
     }
 
+    public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, List<String> workFolders, boolean preview) {
+        this(provider, workFolders, 0, preview);
+    }
+
+    public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, String workFolder, int changeSetNumber) {
+        this(provider, Collections.singletonList(workFolder), changeSetNumber, false);
+    }
+
+    public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, String workFolder, boolean preview) {
+        this(provider, Collections.singletonList(workFolder), preview);
+    }
+
     public GetFilesToWorkFolderCommand(ServerConfigurationProvider provider, String workFolder) {
         this(provider, workFolder, false);
     }
@@ -31,8 +54,13 @@ public class GetFilesToWorkFolderCommand extends AbstractCommand implements Pars
     public MaskedArgumentListBuilder getArguments() {
         MaskedArgumentListBuilder arguments = new MaskedArgumentListBuilder();        
         arguments.add("get");
-        arguments.add(workFolder);
+        for (String workFolder : workFolders) {
+            arguments.add(workFolder);
+        }
         arguments.add("-recursive");
+        if (changeSetNumber > 0) {
+            arguments.add(String.format("-version:C%d", changeSetNumber));
+        }
         if (preview) {
             arguments.add("-preview");
         }
@@ -0,0 +1,65 @@
+package hudson.plugins.tfs.commands;
+
+import hudson.Util;
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.util.DateUtil;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfs.util.TextTableParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+/**
+ * TF command for retrieving the latest change set under a project path.
+ * <p>
+ * The parser only reads the first change set in the output, the rest of the output
+ * (if any) is left in the reader so the caller can stop the command directly.
+ */
+public class LatestChangeSetCommand extends AbstractCommand implements ParseableCommand<ChangeSet> {
+
+    private final String projectPath;
+
+    /**
+     * @param projectPath the project path to get the latest change set for
+     */
+    public LatestChangeSetCommand(ServerConfigurationProvider provider, String projectPath) {
+        super(provider);
+        this.projectPath = projectPath;
+    }
+
+    /**
+     * Returns the arguments for the command
+     * @return arguments for the command.
+     */
+    public MaskedArgumentListBuilder getArguments() {
+        MaskedArgumentListBuilder arguments = new MaskedArgumentListBuilder();        
+        arguments.add("history");
+        arguments.add(projectPath);
+        arguments.add("-noprompt");
+        arguments.add("-version:T");
+        arguments.add("-recursive");
+        arguments.add("-format:brief");
+        arguments.add("-stopafter:1");
+        addServerArgument(arguments);
+        addLoginArgument(arguments);
+        return arguments;
+    }
+
+    /**
+     * Parse the first row in the reader and return it as a change set.
+     * @param consoleReader console output
+     * @return the latest change set; null if there is no change set in the output.
+     */
+    public ChangeSet parse(Reader consoleReader) throws ParseException, IOException {
+        TextTableParser parser = new TextTableParser(new BufferedReader(consoleReader), 1);
+        if (parser.nextRow()) {
+            return new ChangeSet(parser.getColumn(0),
+                    DateUtil.parseDate(parser.getColumn(2)),
+                    parser.getColumn(1),
+                    Util.fixNull(parser.getColumn(3)));
+        }
+        return null;
+    }
+}
@@ -11,8 +11,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ListWorkspacesCommand extends AbstractCommand implements ParseableCommand<List<Workspace>> {
+    /** The computer name that lists the workspaces on all computers */
+    public static final String ALL_COMPUTERS = "*";
+
     private final WorkspaceFactory factory;
     private final String computer;
+    private final String workspaceName;
 
     public interface WorkspaceFactory {
         Workspace createWorkspace(String name, String computer, String owner, String comment);
@@ -23,8 +27,18 @@ public class ListWorkspacesCommand extends AbstractCommand implements ParseableC
     }
 
     public ListWorkspacesCommand(WorkspaceFactory factory, ServerConfigurationProvider config, String computer) {
+        this(factory, config, computer, null);
+    }
+
+    /**
+     * @param computer the computer to list the workspaces of; null for the default computer, or 
+     * {@link #ALL_COMPUTERS} for all computers
+     * @param workspaceName the name of the workspace to list; null to list all workspaces
+     */
+    public ListWorkspacesCommand(WorkspaceFactory factory, ServerConfigurationProvider config, String computer, String workspaceName) {
         super(config);
         this.computer = computer;
+        this.workspaceName = workspaceName;
         this.factory = factory;
     }
 
@@ -35,6 +49,9 @@ public class ListWorkspacesCommand extends AbstractCommand implements ParseableC
         if (Util.fixEmpty(computer) != null) {
             arguments.add(String.format("-computer:%s", computer));
         }
+        if (Util.fixEmpty(workspaceName) != null) {
+            arguments.add(workspaceName);
+        }
         addServerArgument(arguments);
         addLoginArgument(arguments);
         return arguments;
@@ -44,7 +61,14 @@ public class ListWorkspacesCommand extends AbstractCommand implements ParseableC
         List<Workspace> list = new ArrayList<Workspace>();
         
         TextTableParser parser = new TextTableParser(consoleReader, 1);
+        if (parser.getColumnCount() < 3) {
+            // There is no table, as when no workspace matches the workspace name
+            return list;
+        }
         while (parser.nextRow()) {
+            if ((workspaceName != null) && !workspaceName.equalsIgnoreCase(parser.getColumn(0))) {
+                continue;
+            }
             Workspace workspace = factory.createWorkspace(
                 parser.getColumn(0), 
                 parser.getColumn(2),
@@ -0,0 +1,20 @@
+package hudson.plugins.tfs.commands;
+
+import java.io.IOException;
+
+/**
+ * Handler that receives the parsed data from a {@link StreamingParseableCommand}
+ * one element at a time, while the command line client output is still being read.
+ *
+ * @param <T> the type of the parsed elements
+ */
+public interface ParseHandler<T> {
+
+    /**
+     * Handles one parsed element from the command line client output
+     * @param element the parsed element
+     * @return true if the parsing should continue; false if the handler does not want any more elements
+     * @throws IOException thrown if there was a problem handling the element
+     */
+    boolean handle(T element) throws IOException;
+}
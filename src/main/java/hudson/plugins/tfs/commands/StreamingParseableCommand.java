@@ -0,0 +1,25 @@
+package hudson.plugins.tfs.commands;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+
+/**
+ * Command whose output can be parsed incrementally, so the parsed data never has
+ * to be kept in memory all at once.
+ *
+ * @param <T> the type of the elements that are passed to the handler when parsing the output.
+ */
+public interface StreamingParseableCommand<T> extends Command {
+
+    /**
+     * Parses the command line client output in reader and passes each element to the handler
+     * as soon as it has been parsed. The parsing stops when the handler returns false.
+     * @param reader reader containing the output from the command line client
+     * @param handler handler that receives the parsed elements
+     * @return true if all output was parsed; false if the parsing was stopped by the handler 
+     * @throws ParseException thrown if there was a problem parsing the data
+     * @throws IOException thrown if there was a problem reading the data from the reader
+     */
+    boolean parse(Reader reader, ParseHandler<T> handler) throws ParseException, IOException;
+}
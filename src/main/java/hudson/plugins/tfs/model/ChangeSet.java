@@ -22,6 +22,7 @@ public class ChangeSet extends hudson.scm.ChangeLogSet.Entry {
     private Date date;
     private String comment;
     private List<Item> items;
+    private String[] unloadedItems;
     
     public ChangeSet() {
         this("", null, "", "");
@@ -37,6 +38,7 @@ public class ChangeSet extends hudson.scm.ChangeLogSet.Entry {
     
     @Override
     public Collection<String> getAffectedPaths() {
+        List<Item> items = getItems();
         Collection<String> paths = new ArrayList<String>(items.size());
         for (Item item : items) {
             paths.add(item.getPath());
@@ -109,14 +111,58 @@ public class ChangeSet extends hudson.scm.ChangeLogSet.Entry {
 
     @Exported
     public List<Item> getItems() {
+        loadItems();
         return items;
     }
     
     public void add(ChangeSet.Item item) {
+        loadItems();
         items.add(item);
         item.setParent(this);
     }
 
+    /**
+     * Sets items that are not created until they are needed, which saves time and memory
+     * when the change set is read only to show its version, user and comment.
+     * @param actionsAndPaths the action and path of each item, ie "add", "$/path", "edit", "$/path2"
+     */
+    public synchronized void setUnloadedItems(String[] actionsAndPaths) {
+        loadItems();
+        unloadedItems = actionsAndPaths;
+    }
+
+    private synchronized void loadItems() {
+        if (unloadedItems != null) {
+            String[] actionsAndPaths = unloadedItems;
+            unloadedItems = null;
+            for (int i = 0; i + 1 < actionsAndPaths.length; i += 2) {
+                add(new Item(actionsAndPaths[i + 1], actionsAndPaths[i]));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the change set that does not belong to any change log set. The items
+     * of the copy are not created until they are needed.
+     */
+    public synchronized ChangeSet copy() {
+        ChangeSet copy = new ChangeSet(version, (date != null ? new Date(date.getTime()) : null), "", comment);
+        copy.user = user;
+        copy.domain = domain;
+        String[] actionsAndPaths = unloadedItems;
+        if (actionsAndPaths == null) {
+            actionsAndPaths = new String[items.size() * 2];
+            for (int i = 0; i < items.size(); i++) {
+                actionsAndPaths[i * 2] = items.get(i).getAction();
+                actionsAndPaths[i * 2 + 1] = items.get(i).getPath();
+            }
+        }
+        if (actionsAndPaths.length > 0) {
+            copy.setUnloadedItems(actionsAndPaths);
+        }
+        return copy;
+    }
+
     @Override
     protected void setParent(hudson.scm.ChangeLogSet parent) {
         super.setParent(parent);
@@ -0,0 +1,63 @@
+package hudson.plugins.tfs.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import hudson.model.InvisibleAction;
+
+/**
+ * An action for storing the highest change set number that a build has seen.
+ * <p>
+ * Change set numbers are unique for a server and are always increasing, so the history
+ * for the next build can be retrieved as the change sets after this change set instead
+ * of using a time range, which would depend on the clocks of the Hudson and TFS servers.
+ */
+public class ChangeSetWatermark extends InvisibleAction implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int changeSetNumber;
+
+    public ChangeSetWatermark(int changeSetNumber) {
+        this.changeSetNumber = changeSetNumber;
+    }
+
+    public int getChangeSetNumber() {
+        return changeSetNumber;
+    }
+
+    /**
+     * Returns the watermark for a build
+     * @param previous the watermark for the previous build; null if there is none
+     * @param changeSets the change sets that was new in the build
+     * @return the highest change set number of the previous watermark and the change sets; 
+     *  null if neither has a change set number
+     */
+    public static ChangeSetWatermark create(ChangeSetWatermark previous, List<ChangeSet> changeSets) {
+        int highest = 0;
+        for (ChangeSet changeSet : changeSets) {
+            highest = Math.max(highest, Integer.parseInt(changeSet.getVersion()));
+        }
+        return create(previous, highest);
+    }
+
+    /**
+     * Returns the watermark for a build
+     * @param previous the watermark for the previous build; null if there is none
+     * @param changeSetNumber the highest change set number that was new in the build; 0 if there was none
+     * @return the highest change set number of the previous watermark and the change set number; 
+     *  null if neither has a change set number
+     */
+    public static ChangeSetWatermark create(ChangeSetWatermark previous, int changeSetNumber) {
+        int highest = Math.max((previous == null ? 0 : previous.getChangeSetNumber()), changeSetNumber);
+        if (highest == 0) {
+            return null;
+        }
+        return new ChangeSetWatermark(highest);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSetWatermark [changeSetNumber=" + changeSetNumber + "]";
+    }
+}
@@ -1,14 +1,21 @@
 package hudson.plugins.tfs.model;
 
+import hudson.plugins.tfs.ToolOutputReader;
 import hudson.plugins.tfs.commands.BriefHistoryCommand;
 import hudson.plugins.tfs.commands.DetailedHistoryCommand;
 import hudson.plugins.tfs.commands.GetFilesToWorkFolderCommand;
+import hudson.plugins.tfs.commands.LatestChangeSetCommand;
+import hudson.plugins.tfs.commands.ParseHandler;
+import hudson.plugins.tfs.commands.StreamingParseableCommand;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.builder.EqualsBuilder;
@@ -36,11 +43,82 @@ public class Project {
      */
     public List<ChangeSet> getDetailedHistory(Calendar fromTimestamp, Calendar toTimestamp) throws IOException, InterruptedException, ParseException {
         DetailedHistoryCommand command = new DetailedHistoryCommand(server, projectPath, fromTimestamp, toTimestamp);
+        return new ArrayList<ChangeSet>(SharedCommands.execute(server, command));
+    }
+
+    /**
+     * Returns a list of change sets containing modified items.
+     * @param fromChangeSetNumber the change set number to get history after
+     * @return a list of change sets committed after the specified change set
+     */
+    public List<ChangeSet> getDetailedHistory(int fromChangeSetNumber) throws IOException, InterruptedException, ParseException {
+        DetailedHistoryCommand command = new DetailedHistoryCommand(server, projectPath, fromChangeSetNumber);
+        return new ArrayList<ChangeSet>(SharedCommands.execute(server, command));
+    }
+
+    /**
+     * Returns a list of change sets containing modified items.
+     * @param fromChangeSetNumber the change set number to get history after
+     * @param toChangeSetNumber the last change set number to get history for; it must be higher than the from change set number
+     * @return a list of change sets committed after the from change set up to and including the to change set
+     */
+    public List<ChangeSet> getDetailedHistory(int fromChangeSetNumber, int toChangeSetNumber) throws IOException, InterruptedException, ParseException {
+        DetailedHistoryCommand command = new DetailedHistoryCommand(server, projectPath, fromChangeSetNumber, toChangeSetNumber, false);
+        return new ArrayList<ChangeSet>(SharedCommands.execute(server, command));
+    }
+
+    /**
+     * Passes the change sets containing modified items to the handler while the history is retrieved,
+     * the latest change set first. The TF tool is stopped if the handler stops the parsing.
+     * @param fromTimestamp the timestamp to get history from
+     * @param toTimestamp the timestamp to get history to
+     * @param handler the handler that receives the change sets
+     * @return true if all change sets were passed to the handler; false if the handler stopped the parsing
+     */
+    public boolean getDetailedHistory(Calendar fromTimestamp, Calendar toTimestamp, ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
+        return parse(new DetailedHistoryCommand(server, projectPath, fromTimestamp, toTimestamp), handler);
+    }
+
+    /**
+     * Passes the change sets containing modified items to the handler while the history is retrieved,
+     * the oldest change set first. The TF tool is stopped if the handler stops the parsing.
+     * @param fromChangeSetNumber the change set number to get history after
+     * @param handler the handler that receives the change sets
+     * @return true if all change sets were passed to the handler; false if the handler stopped the parsing
+     */
+    public boolean getDetailedHistory(int fromChangeSetNumber, ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
+        return parse(new DetailedHistoryCommand(server, projectPath, fromChangeSetNumber, true), handler);
+    }
+
+    /**
+     * Passes the change sets containing modified items to the handler while the history is retrieved,
+     * the oldest change set first. The TF tool is stopped if the handler stops the parsing.
+     * @param fromChangeSetNumber the change set number to get history after
+     * @param toChangeSetNumber the last change set number to get history for; it must be higher than the from change set number
+     * @param handler the handler that receives the change sets
+     * @return true if all change sets were passed to the handler; false if the handler stopped the parsing
+     */
+    public boolean getDetailedHistory(int fromChangeSetNumber, int toChangeSetNumber, ParseHandler<ChangeSet> handler) throws IOException, InterruptedException, ParseException {
+        return parse(new DetailedHistoryCommand(server, projectPath, fromChangeSetNumber, toChangeSetNumber, true), handler);
+    }
+
+    private <T> boolean parse(StreamingParseableCommand<T> command, ParseHandler<T> handler) throws IOException, InterruptedException, ParseException {
         Reader reader = null;
         try {
             reader = server.execute(command.getArguments());
-            return command.parse(reader);
+            boolean completed = command.parse(reader, handler);
+            Reader output = reader;
+            reader = null;
+            if (!completed && (output instanceof ToolOutputReader)) {
+                // The rest of the output is not needed, so there is no reason to wait for the tool
+                ((ToolOutputReader) output).abort();
+            } else {
+                // The exit code of the command is checked when the reader is closed
+                ToolOutputReader.waitFor(output);
+            }
+            return completed;
         } finally {
+            // Only closed quietly if the command or the parsing failed
             IOUtils.closeQuietly(reader);
         }
     }
@@ -53,13 +131,73 @@ public class Project {
      */
     public List<ChangeSet> getBriefHistory(Calendar fromTimestamp, Calendar toTimestamp) throws IOException, InterruptedException, ParseException {
         BriefHistoryCommand command = new BriefHistoryCommand(server, projectPath, fromTimestamp, toTimestamp);
-        Reader reader = null;
-        try {
-            reader = server.execute(command.getArguments());
-            return command.parse(reader);
-        } finally {
-            IOUtils.closeQuietly(reader);
+        return new ArrayList<ChangeSet>(SharedCommands.execute(server, command));
+    }
+
+    /**
+     * Returns a list of change sets not containing the modified items.
+     * @param fromChangeSetNumber the change set number to get history after
+     * @return a list of change sets committed after the specified change set
+     */
+    public List<ChangeSet> getBriefHistory(int fromChangeSetNumber) throws IOException, InterruptedException, ParseException {
+        BriefHistoryCommand command = new BriefHistoryCommand(server, projectPath, fromChangeSetNumber);
+        return new ArrayList<ChangeSet>(SharedCommands.execute(server, command));
+    }
+
+    /**
+     * Returns the latest change set under the project path, or the change set that was retrieved
+     * lately by another server object for the same server. Use it where a change set that is a few
+     * seconds old is good enough, such as when polling.
+     * @return the latest change set; null if there are no change sets
+     */
+    public ChangeSet getCachedLatestChangeSet() throws IOException, InterruptedException, ParseException {
+        ServerSession session = server.getSession();
+        ChangeSet changeSet = (session != null ? session.getLatestChangeSet(projectPath) : null);
+        if (changeSet == null) {
+            changeSet = getLatestChangeSet();
         }
+        return changeSet;
+    }
+
+    /**
+     * Returns the latest change set under the project path.
+     * The TF tool is stopped as soon as the change set has been read.
+     * @return the latest change set; null if there are no change sets
+     */
+    public ChangeSet getLatestChangeSet() throws IOException, InterruptedException, ParseException {
+        ChangeSet changeSet = retrieveLatestChangeSet();
+        ServerSession session = server.getSession();
+        if (session != null) {
+            session.putLatestChangeSet(projectPath, changeSet);
+        }
+        return changeSet;
+    }
+
+    private ChangeSet retrieveLatestChangeSet() throws IOException, InterruptedException, ParseException {
+        final LatestChangeSetCommand command = new LatestChangeSetCommand(server, projectPath);
+        final MaskedArgumentListBuilder arguments = command.getArguments();
+        return SharedCommands.execute(server, arguments, new Callable<ChangeSet>() {
+            public ChangeSet call() throws Exception {
+                Reader reader = null;
+                try {
+                    reader = server.execute(arguments);
+                    ChangeSet changeSet = command.parse(reader);
+                    Reader output = reader;
+                    reader = null;
+                    if ((changeSet != null) && (output instanceof ToolOutputReader)) {
+                        // The rest of the output is not needed, so there is no reason to wait for the tool
+                        ((ToolOutputReader) output).abort();
+                    } else {
+                        // The exit code of the command is checked when the reader is closed
+                        ToolOutputReader.waitFor(output);
+                    }
+                    return changeSet;
+                } finally {
+                    // Only closed quietly if the command or the parsing failed
+                    IOUtils.closeQuietly(reader);
+                }
+            }
+        });
     }
 
     /**
@@ -67,8 +205,17 @@ public class Project {
      * @param localPath the local path to get all files into
      */
     public void getFiles(String localPath) throws IOException, InterruptedException {
-        GetFilesToWorkFolderCommand command = new GetFilesToWorkFolderCommand(server, localPath);
-        server.execute(command.getArguments()).close();
+        getFiles(localPath, 0);
+    }
+
+    /**
+     * Gets all files from server as they were in a change set.
+     * @param localPath the local path to get all files into
+     * @param changeSetNumber the change set to get the files of; 0 to get the latest files
+     */
+    public void getFiles(String localPath, int changeSetNumber) throws IOException, InterruptedException {
+        GetFilesToWorkFolderCommand command = new GetFilesToWorkFolderCommand(server, localPath, changeSetNumber);
+        ToolOutputReader.waitFor(server.execute(command.getArguments()));
     }
 
     @Override
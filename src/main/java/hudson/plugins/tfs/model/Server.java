@@ -1,12 +1,16 @@
 package hudson.plugins.tfs.model;
 
+import hudson.FilePath;
+import hudson.model.TaskListener;
 import hudson.plugins.tfs.TfTool;
 import hudson.plugins.tfs.commands.ServerConfigurationProvider;
 import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class Server implements ServerConfigurationProvider {
@@ -17,12 +21,14 @@ public class Server implements ServerConfigurationProvider {
     private Workspaces workspaces;
     private Map<String, Project> projects = new HashMap<String, Project>();
     private final TfTool tool;
+    private final ServerSession session;
 
     public Server(TfTool tool, String url, String username, String password) {
         this.tool = tool;
         this.url = url;
         this.userName = username;
         this.userPassword = password;
+        this.session = ServerSession.getSession(url, username);
     }
 
     Server(String url) {
@@ -38,7 +44,7 @@ public class Server implements ServerConfigurationProvider {
     
     public Workspaces getWorkspaces() {
         if (workspaces == null) {
-            workspaces = new Workspaces(this);
+            workspaces = new Workspaces(this, session.getWorkspaceListCache());
         }
         return workspaces;
     }
@@ -46,6 +52,21 @@ public class Server implements ServerConfigurationProvider {
     public Reader execute(MaskedArgumentListBuilder arguments) throws IOException, InterruptedException {
         return tool.execute(arguments.toCommandArray(), arguments.toMaskArray());
     }
+    
+    /**
+     * Execute several commands in one go, which is faster than executing them one at a time.
+     * @param commandArguments list of arguments for the commands, in the order they should be executed
+     * @return a Reader containing the console output of all commands
+     */
+    public Reader execute(List<MaskedArgumentListBuilder> commandArguments) throws IOException, InterruptedException {
+        List<String[]> commands = new ArrayList<String[]>();
+        List<boolean[]> masks = new ArrayList<boolean[]>();
+        for (MaskedArgumentListBuilder arguments : commandArguments) {
+            commands.add(arguments.toCommandArray());
+            masks.add(arguments.toMaskArray());
+        }
+        return tool.executeBatch(commands, masks);
+    }
 
     public String getUrl() {
         return url;
@@ -59,7 +80,31 @@ public class Server implements ServerConfigurationProvider {
         return userPassword;
     }
 
+    /**
+     * Returns the listener that the output of the commands is logged to
+     * @return the listener; or null if there is no tool to execute commands with
+     */
+    public TaskListener getListener() {
+        return (tool != null ? tool.getListener() : null);
+    }
+
+    /**
+     * Returns the session that keeps facts about the server between server objects
+     */
+    public ServerSession getSession() {
+        return session;
+    }
+
     public String getLocalHostname() throws IOException, InterruptedException {
-        return tool.getHostname();
+        FilePath workspace = tool.getWorkspace();
+        if (workspace == null) {
+            return tool.getHostname();
+        }
+        String hostname = session.getHostname(workspace);
+        if (hostname == null) {
+            hostname = tool.getHostname();
+            session.putHostname(workspace, hostname);
+        }
+        return hostname;
     }
 }
@@ -0,0 +1,125 @@
+package hudson.plugins.tfs.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.FilePath;
+
+/**
+ * Facts about a TFS server that are kept between the {@link Server} objects that are created
+ * for every checkout, poll and workspace deletion.
+ * <p>
+ * There is one session for each server url and user in this JVM. The facts in a session have
+ * explicit lifetimes:
+ * <ul>
+ * <li>the lists of workspaces are kept for the seconds in the {@link WorkspaceListCache#TIME_TO_LIVE} system property,</li>
+ * <li>the latest change sets for project paths are kept for the seconds in the {@link #LATEST_CHANGE_SET_TIME_TO_LIVE} system property,</li>
+ * <li>the host names of the nodes are kept as long as the node is connected.</li>
+ * </ul>
+ */
+public class ServerSession {
+
+    /** System property that sets the number of seconds the latest change set of a project path is cached when polling */
+    public static final String LATEST_CHANGE_SET_TIME_TO_LIVE = "tfs.server.latestchangesetttl";
+
+    static final int DEFAULT_LATEST_CHANGE_SET_TIME_TO_LIVE = 30;
+
+    private static final ConcurrentMap<String, ServerSession> SESSIONS = new ConcurrentHashMap<String, ServerSession>();
+
+    /** Key for the host name of the master, as its files do not have a channel */
+    private static final Object MASTER = new Object();
+
+    private final WorkspaceListCache workspaceListCache;
+    private final ConcurrentMap<String, CachedChangeSet> latestChangeSets = new ConcurrentHashMap<String, CachedChangeSet>();
+    private final Map<Object, String> hostnames = Collections.synchronizedMap(new WeakHashMap<Object, String>());
+    private final long latestChangeSetTimeToLive;
+
+    /**
+     * @param workspaceListTimeToLive number of milliseconds a list of workspaces is cached
+     * @param latestChangeSetTimeToLive number of milliseconds a latest change set is cached
+     */
+    ServerSession(long workspaceListTimeToLive, long latestChangeSetTimeToLive) {
+        this.workspaceListCache = new WorkspaceListCache(workspaceListTimeToLive);
+        this.latestChangeSetTimeToLive = latestChangeSetTimeToLive;
+    }
+
+    /**
+     * Returns the session for the server and user, that is shared by all servers in this JVM
+     * @param url the url of the server
+     * @param userName the user name that logs in to the server
+     * @return the session
+     */
+    public static ServerSession getSession(String url, String userName) {
+        String key = url + "|" + userName;
+        ServerSession session = SESSIONS.get(key);
+        if (session == null) {
+            session = new ServerSession(
+                    TimeUnit.SECONDS.toMillis(Integer.getInteger(WorkspaceListCache.TIME_TO_LIVE, WorkspaceListCache.DEFAULT_TIME_TO_LIVE)),
+                    TimeUnit.SECONDS.toMillis(Integer.getInteger(LATEST_CHANGE_SET_TIME_TO_LIVE, DEFAULT_LATEST_CHANGE_SET_TIME_TO_LIVE)));
+            ServerSession existing = SESSIONS.putIfAbsent(key, session);
+            if (existing != null) {
+                session = existing;
+            }
+        }
+        return session;
+    }
+
+    public WorkspaceListCache getWorkspaceListCache() {
+        return workspaceListCache;
+    }
+
+    /**
+     * Returns the cached latest change set of the project path
+     * @return the latest change set; null if it is not cached or the cached change set has expired
+     */
+    public ChangeSet getLatestChangeSet(String projectPath) {
+        String key = projectPath.toLowerCase();
+        CachedChangeSet cachedChangeSet = latestChangeSets.get(key);
+        if (cachedChangeSet == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cachedChangeSet.created >= latestChangeSetTimeToLive) {
+            latestChangeSets.remove(key, cachedChangeSet);
+            return null;
+        }
+        return cachedChangeSet.changeSet;
+    }
+
+    public void putLatestChangeSet(String projectPath, ChangeSet changeSet) {
+        if ((changeSet != null) && (latestChangeSetTimeToLive > 0)) {
+            latestChangeSets.put(projectPath.toLowerCase(), new CachedChangeSet(changeSet));
+        }
+    }
+
+    /**
+     * Returns the cached host name of the node that the files are on
+     * @param file a file on the node
+     * @return the host name; null if it is not cached
+     */
+    public String getHostname(FilePath file) {
+        return hostnames.get(getNodeKey(file));
+    }
+
+    public void putHostname(FilePath file, String hostname) {
+        if (hostname != null) {
+            hostnames.put(getNodeKey(file), hostname);
+        }
+    }
+
+    private static Object getNodeKey(FilePath file) {
+        return (file.getChannel() != null ? file.getChannel() : MASTER);
+    }
+
+    private static class CachedChangeSet {
+        private final long created = System.currentTimeMillis();
+        private final ChangeSet changeSet;
+
+        public CachedChangeSet(ChangeSet changeSet) {
+            this.changeSet = changeSet;
+        }
+    }
+}
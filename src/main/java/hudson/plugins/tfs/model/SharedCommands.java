@@ -0,0 +1,58 @@
+package hudson.plugins.tfs.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.io.IOUtils;
+
+import hudson.plugins.tfs.ToolOutputReader;
+import hudson.plugins.tfs.commands.ParseableCommand;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+import hudson.plugins.tfs.util.SingleFlight;
+
+/**
+ * Executes read only commands, so identical commands that are executed at the same time by
+ * different builds or polls share one execution of the TF tool.
+ */
+class SharedCommands {
+
+    private SharedCommands() {
+    }
+
+    /**
+     * Executes the command and parses its output, or waits for the result of an identical command.
+     * The result may be shared with other threads, and must not be modified.
+     */
+    static <T> T execute(final Server server, final ParseableCommand<T> command) throws IOException, InterruptedException, ParseException {
+        final MaskedArgumentListBuilder arguments = command.getArguments();
+        return execute(server, arguments, new Callable<T>() {
+            public T call() throws Exception {
+                Reader reader = null;
+                try {
+                    reader = server.execute(arguments);
+                    T result = command.parse(reader);
+                    // The exit code of the command is checked when the reader is closed, so a failed
+                    // command is not taken for a result
+                    Reader output = reader;
+                    reader = null;
+                    ToolOutputReader.waitFor(output);
+                    return result;
+                } finally {
+                    // Only closed quietly if the command or the parsing failed
+                    IOUtils.closeQuietly(reader);
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes the command, or waits for the result of an identical command. The output of a
+     * shared command is only logged by the build that ran it, so the server's listener is told
+     * when the result of another build's command is used.
+     */
+    static <T> T execute(Server server, MaskedArgumentListBuilder arguments, Callable<T> command) throws IOException, InterruptedException, ParseException {
+        return SingleFlight.getInstance().execute(SingleFlight.getKey(arguments), command, server.getListener());
+    }
+}
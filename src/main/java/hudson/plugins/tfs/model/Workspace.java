@@ -1,16 +1,21 @@
 package hudson.plugins.tfs.model;
 
 import java.io.IOException;
-import java.io.Reader;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
+import hudson.plugins.tfs.ToolOutputReader;
+import hudson.plugins.tfs.commands.GetFilesToWorkFolderCommand;
 import hudson.plugins.tfs.commands.GetWorkspaceMappingsCommand;
 import hudson.plugins.tfs.commands.MapWorkfolderCommand;
 import hudson.plugins.tfs.commands.UnmapWorkfolderCommand;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 public class Workspace {
 
@@ -34,20 +39,72 @@ public class Workspace {
 
     public void mapWorkfolder(Project project, String workFolder) throws IOException, InterruptedException {
         MapWorkfolderCommand command = new MapWorkfolderCommand(server, project.getProjectPath(), workFolder, name);
-        server.execute(command.getArguments()).close();
+        ToolOutputReader.waitFor(server.execute(command.getArguments()));
+    }
+
+    /**
+     * Maps several projects to work folders using one execution of the TF tool.
+     * @param projectMappings map of projects and the work folder they should be mapped to
+     */
+    public void mapWorkfolders(Map<Project, String> projectMappings) throws IOException, InterruptedException {
+        if (projectMappings.isEmpty()) {
+            return;
+        }
+        List<MaskedArgumentListBuilder> commands = new ArrayList<MaskedArgumentListBuilder>();
+        for (Map.Entry<Project, String> mapping : projectMappings.entrySet()) {
+            commands.add(new MapWorkfolderCommand(server, mapping.getKey().getProjectPath(), mapping.getValue(), name).getArguments());
+        }
+        ToolOutputReader.waitFor(server.execute(commands));
+    }
+
+    /**
+     * Gets all files in several mapped work folders using one execution of the TF tool.
+     * @param workFolders the local work folders that are mapped in this workspace
+     */
+    public void getFiles(List<String> workFolders) throws IOException, InterruptedException {
+        getFiles(workFolders, 0);
+    }
+
+    /**
+     * Gets all files in several mapped work folders, as they were in a change set, using one execution of the TF tool.
+     * @param workFolders the local work folders that are mapped in this workspace
+     * @param changeSetNumber the change set to get the files of; 0 to get the latest files
+     */
+    public void getFiles(List<String> workFolders, int changeSetNumber) throws IOException, InterruptedException {
+        if (workFolders.isEmpty()) {
+            return;
+        }
+        GetFilesToWorkFolderCommand command = new GetFilesToWorkFolderCommand(server, workFolders, changeSetNumber, false);
+        ToolOutputReader.waitFor(server.execute(command.getArguments()));
+    }
+
+    /**
+     * Unmaps and maps several work folders using one execution of the TF tool. The folders
+     * are unmapped before the new mappings are added.
+     * @param unmappedWorkFolders the work folders that should be unmapped
+     * @param projectMappings map of projects and the work folder they should be mapped to
+     */
+    public void updateWorkfolders(Collection<String> unmappedWorkFolders, Map<Project, String> projectMappings) throws IOException, InterruptedException {
+        List<MaskedArgumentListBuilder> commands = new ArrayList<MaskedArgumentListBuilder>();
+        for (String workFolder : unmappedWorkFolders) {
+            commands.add(new UnmapWorkfolderCommand(server, workFolder, name).getArguments());
+        }
+        for (Map.Entry<Project, String> mapping : projectMappings.entrySet()) {
+            commands.add(new MapWorkfolderCommand(server, mapping.getKey().getProjectPath(), mapping.getValue(), name).getArguments());
+        }
+        if (!commands.isEmpty()) {
+            ToolOutputReader.waitFor(server.execute(commands));
+        }
     }
 
     public void unmapWorkfolder(String workFolder) throws IOException, InterruptedException {
         UnmapWorkfolderCommand command = new UnmapWorkfolderCommand(server, workFolder, name);
-        server.execute(command.getArguments()).close();
+        ToolOutputReader.waitFor(server.execute(command.getArguments()));
     }
 
     public List<WorkspaceMapping> getMappings() throws IOException, InterruptedException, ParseException {
         GetWorkspaceMappingsCommand command = new GetWorkspaceMappingsCommand(server, name);
-        Reader reader = server.execute(command.getArguments());
-        List<WorkspaceMapping> mappings = command.parse(reader);
-        reader.close();
-        return mappings;
+        return new ArrayList<WorkspaceMapping>(SharedCommands.execute(server, command));
     }
 
     public boolean exists() throws IOException, InterruptedException {
@@ -46,6 +46,10 @@ public class WorkspaceConfiguration extends InvisibleAction implements Serializa
         return workfolder;
     }
 
+    public String getProjectPath() {
+        return projectPath;
+    }
+
     public Set<Entry<String, String>> getProjectMappings() {
         return ProjectPathUtil.getProjectMappings(projectPath, workfolder).entrySet();
     }
@@ -62,6 +66,15 @@ public class WorkspaceConfiguration extends InvisibleAction implements Serializa
         this.workspaceExists = false;
     }
 
+    /**
+     * Returns if the other configuration uses the same workspace on the same server, 
+     * although the project paths or work folder may differ.
+     */
+    public boolean isSameWorkspace(WorkspaceConfiguration other) {
+        return (workspaceName == null ? other.workspaceName == null : workspaceName.equals(other.workspaceName))
+            && (serverUrl == null ? other.serverUrl == null : serverUrl.equals(other.serverUrl));
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -0,0 +1,78 @@
+package hudson.plugins.tfs.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the workspaces that have been listed on a TFS server for a computer.
+ * <p>
+ * A new {@link Server} is created for every poll and checkout, so the list of workspaces is
+ * shared between them through the cache in the {@link ServerSession}. The lists are kept per computer
+ * and server for the number of seconds in the {@link #TIME_TO_LIVE} system property, and are invalidated
+ * when a workspace is created or deleted through {@link Workspaces}.
+ */
+public class WorkspaceListCache {
+
+    /** System property that sets the number of seconds a list of workspaces is cached, 0 disables the cache */
+    public static final String TIME_TO_LIVE = "tfs.workspaces.cachettl";
+
+    static final int DEFAULT_TIME_TO_LIVE = 60;
+
+    private final ConcurrentMap<String, CachedList> lists = new ConcurrentHashMap<String, CachedList>();
+    private final long timeToLive;
+
+    /**
+     * @param timeToLive number of milliseconds a list of workspaces is cached
+     */
+    WorkspaceListCache(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the key for the workspaces on a server that belongs to a computer
+     * @param computer the host name of the computer; null if the workspaces are not filtered by computer
+     */
+    static String getKey(Server server, String computer) {
+        return String.valueOf(computer).toLowerCase() + "|" + server.getUrl() + "|" + server.getUserName();
+    }
+
+    /**
+     * Returns the cached list of workspaces
+     * @return the list of workspaces; null if it is not cached or the cached list has expired
+     */
+    public List<Workspace> get(String key) {
+        CachedList cachedList = lists.get(key);
+        if (cachedList == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - cachedList.created >= timeToLive) {
+            lists.remove(key, cachedList);
+            return null;
+        }
+        return cachedList.workspaces;
+    }
+
+    public void put(String key, List<Workspace> workspaces) {
+        if (timeToLive > 0) {
+            lists.put(key, new CachedList(Collections.unmodifiableList(workspaces)));
+        }
+    }
+
+    /**
+     * Removes the cached list, so the workspaces are listed from the server the next time
+     */
+    public void invalidate(String key) {
+        lists.remove(key);
+    }
+
+    private static class CachedList {
+        private final long created = System.currentTimeMillis();
+        private final List<Workspace> workspaces;
+
+        public CachedList(List<Workspace> workspaces) {
+            this.workspaces = workspaces;
+        }
+    }
+}
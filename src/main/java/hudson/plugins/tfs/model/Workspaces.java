@@ -1,16 +1,21 @@
 package hudson.plugins.tfs.model;
 
 import java.io.IOException;
-import java.io.Reader;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.io.IOUtils;
-
+import hudson.Util;
+import hudson.plugins.tfs.ToolOutputReader;
 import hudson.plugins.tfs.commands.DeleteWorkspaceCommand;
 import hudson.plugins.tfs.commands.ListWorkspacesCommand;
+import hudson.plugins.tfs.commands.MapWorkfolderCommand;
 import hudson.plugins.tfs.commands.NewWorkspaceCommand;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 /**
  * Class that creates, deletes and gets workspaces from a TeamFoundationServer.
@@ -22,23 +27,85 @@ public class Workspaces implements ListWorkspacesCommand.WorkspaceFactory {
     private Map<String,Workspace> workspaces = new HashMap<String,Workspace>();
     private Server server;
     private boolean mapIsPopulatedFromServer;
+    private final Set<String> namesLookedUpOnAllComputers = new HashSet<String>();
+    private final WorkspaceListCache listCache;
+    private boolean localHostnameIsRetrieved;
+    private String localHostname;
     
     public Workspaces(Server server) {
+        this(server, null);
+    }
+
+    /**
+     * @param server the server that the workspaces are on
+     * @param listCache the cache that the list of workspaces is shared through; null if it should not be cached
+     */
+    public Workspaces(Server server, WorkspaceListCache listCache) {
         this.server = server;
+        this.listCache = listCache;
+    }
+
+    /**
+     * Returns the host name of the computer that the TF tool runs on, which the listed
+     * workspaces are filtered by.
+     */
+    private String getLocalHostname() throws IOException, InterruptedException {
+        if (!localHostnameIsRetrieved) {
+            localHostname = server.getLocalHostname();
+            localHostnameIsRetrieved = true;
+        }
+        return localHostname;
     }
 
     /**
-     * Get the list of workspaces from the server
+     * Get the list of workspaces on the local computer from the server, or from the cache if
+     * the list has been retrieved lately.
      * @return the list of workspaces at the server
      */
     private List<Workspace> getListFromServer() throws IOException, InterruptedException {
-        ListWorkspacesCommand command = new ListWorkspacesCommand(this, server);
-        Reader reader = null;
+        if (listCache == null) {
+            return listFromServer(getLocalHostname(), null);
+        }
+        String key = WorkspaceListCache.getKey(server, getLocalHostname());
+        List<Workspace> cachedList = listCache.get(key);
+        if (cachedList != null) {
+            return copyOf(cachedList);
+        }
+        List<Workspace> list = listFromServer(getLocalHostname(), null);
+        listCache.put(key, list);
+        return list;
+    }
+
+    /**
+     * Lists the workspaces from the server. The list is shared with other servers that list
+     * the same workspaces at the same time, so the workspaces are copied to this server.
+     * @param computer the host name of the computer to list the workspaces of
+     * @param workspaceName the name of the workspace to list; null to list all workspaces
+     */
+    private List<Workspace> listFromServer(String computer, String workspaceName) throws IOException, InterruptedException {
+        ListWorkspacesCommand command = new ListWorkspacesCommand(this, server, computer, workspaceName);
         try {
-            reader = server.execute(command.getArguments());
-            return command.parse(reader);
-        } finally {
-            IOUtils.closeQuietly(reader);
+            return copyOf(SharedCommands.execute(server, command));
+        } catch (ParseException e) {
+            // The workspaces command does not throw parse exceptions
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    private List<Workspace> copyOf(List<Workspace> workspaces) {
+        List<Workspace> list = new ArrayList<Workspace>();
+        for (Workspace workspace : workspaces) {
+            list.add(createWorkspace(workspace.getName(), workspace.getComputer(), workspace.getOwner(), workspace.getComment()));
+        }
+        return list;
+    }
+
+    /**
+     * Invalidates the cached list of workspaces after a workspace has been created or deleted.
+     */
+    private void invalidateListCache() throws IOException, InterruptedException {
+        if (listCache != null) {
+            listCache.invalidate(WorkspaceListCache.getKey(server, getLocalHostname()));
         }
     }
     
@@ -54,15 +121,43 @@ public class Workspaces implements ListWorkspacesCommand.WorkspaceFactory {
         }
     }
     
+    /**
+     * Looks up the workspace on all computers from the server once. Workspace names are unique per 
+     * owner and not per computer, so a workspace that is not on the local computer may still block 
+     * a new workspace with the same name. Only the workspace with the name is listed, and not all 
+     * workspaces on the server.
+     */
+    private void populateMapFromAllComputers(String workspaceName) throws IOException, InterruptedException {
+        if ((Util.fixEmpty(getLocalHostname()) == null) || !namesLookedUpOnAllComputers.add(workspaceName)) {
+            return;
+        }
+        for (Workspace workspace : listFromServer(ListWorkspacesCommand.ALL_COMPUTERS, workspaceName)) {
+            if (!workspaces.containsKey(workspace.getName())) {
+                workspaces.put(workspace.getName(), workspace);
+            }
+        }
+    }
+
+    /**
+     * Populate the map field from the server if it does not contain the workspace, first
+     * with the workspaces on the local computer and then with the workspace on any computer.
+     */
+    private void populateMapFromServer(String workspaceName) throws IOException, InterruptedException {
+        if (!workspaces.containsKey(workspaceName)) {
+            populateMapFromServer();
+        }
+        if (!workspaces.containsKey(workspaceName)) {
+            populateMapFromAllComputers(workspaceName);
+        }
+    }
+    
     /**
      * Returns the workspace with the specified name
      * @param workspaceName the name of the workspace name
      * @return the workspace with the specified name; null if it wasnt found
      */
     public Workspace getWorkspace(String workspaceName) throws IOException, InterruptedException {
-        if (!workspaces.containsKey(workspaceName)) {
-            populateMapFromServer();
-        }
+        populateMapFromServer(workspaceName);
         return workspaces.get(workspaceName);
     }
 
@@ -72,9 +167,7 @@ public class Workspaces implements ListWorkspacesCommand.WorkspaceFactory {
      * @return true if the workspace exists on server; false otherwise
      */
     public boolean exists(String workspaceName) throws IOException, InterruptedException {
-        if (!workspaces.containsKey(workspaceName)) {
-            populateMapFromServer();
-        }
+        populateMapFromServer(workspaceName);
         return workspaces.containsKey(workspaceName);
     }
 
@@ -94,7 +187,28 @@ public class Workspaces implements ListWorkspacesCommand.WorkspaceFactory {
      */
     public Workspace newWorkspace(String name) throws IOException, InterruptedException {
         NewWorkspaceCommand command = new NewWorkspaceCommand(server, name);
-        server.execute(command.getArguments()).close();        
+        ToolOutputReader.waitFor(server.execute(command.getArguments()));        
+        invalidateListCache();
+        Workspace workspace = new Workspace(server, name);
+        workspaces.put(name, workspace);
+        return workspace;
+    }
+    
+    /**
+     * Create workspace on server with its work folder mappings, using one execution of the TF tool,
+     * and return a workspace object with the specified name
+     * @param name the name of the new workspace
+     * @param projectMappings map of projects and the work folder they should be mapped to
+     * @return a workspace
+     */
+    public Workspace newWorkspace(String name, Map<Project, String> projectMappings) throws IOException, InterruptedException {
+        List<MaskedArgumentListBuilder> commands = new ArrayList<MaskedArgumentListBuilder>();
+        commands.add(new NewWorkspaceCommand(server, name).getArguments());
+        for (Map.Entry<Project, String> mapping : projectMappings.entrySet()) {
+            commands.add(new MapWorkfolderCommand(server, mapping.getKey().getProjectPath(), mapping.getValue(), name).getArguments());
+        }
+        ToolOutputReader.waitFor(server.execute(commands));
+        invalidateListCache();
         Workspace workspace = new Workspace(server, name);
         workspaces.put(name, workspace);
         return workspace;
@@ -107,7 +221,13 @@ public class Workspaces implements ListWorkspacesCommand.WorkspaceFactory {
     public void deleteWorkspace(Workspace workspace) throws IOException, InterruptedException {
         DeleteWorkspaceCommand command = new DeleteWorkspaceCommand(server, workspace.getName());
         workspaces.remove(workspace.getName());
-        server.execute(command.getArguments()).close();
+        // The workspace is known to be deleted, so it is not looked up again on all computers
+        namesLookedUpOnAllComputers.add(workspace.getName());
+        try {
+            ToolOutputReader.waitFor(server.execute(command.getArguments()));
+        } finally {
+            invalidateListCache();
+        }
     }
 
     public Workspace createWorkspace(String name, String computer, String owner, String comment) {
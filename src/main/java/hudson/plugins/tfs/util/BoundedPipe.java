@@ -0,0 +1,166 @@
+package hudson.plugins.tfs.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * In-memory pipe with a fixed size buffer between one writing and one reading thread.
+ * <p>
+ * The writer blocks when the buffer is full and the reader blocks when the buffer is empty,
+ * so the amount of memory used is bounded regardless of how much data that is passed through
+ * the pipe. Unlike {@link java.io.PipedInputStream} the pipe does not care which threads that
+ * write or read, the writer may come and go as long as the write end is closed
+ * by calling {@link #closeWriter()} when there is no more data.
+ * <p>
+ * If the read end is closed before all data has been read, any further written data is
+ * discarded silently so the writer never blocks on a reader that has gone away.
+ */
+public class BoundedPipe {
+
+    private final byte[] buffer;
+    private int readPosition;
+    private int count;
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    private final InputStream inputStream = new PipeInputStream();
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    public BoundedPipe(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be larger than zero");
+        }
+        buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Returns the read end of the pipe
+     * @return the input stream that reads the data written to the pipe
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Returns the write end of the pipe.
+     * Closing the returned stream does not close the pipe, as the stream may be shared
+     * with several other writers (such as a fork stream), use {@link #closeWriter()} instead.
+     * @return the output stream that writes data to the pipe
+     */
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Marks that there will be no more data written to the pipe. When the reader
+     * has read the remaining data in the buffer it will get an end of stream.
+     */
+    public synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    /**
+     * Closes the read end of the pipe, any data written after this is discarded.
+     */
+    public synchronized void closeReader() {
+        readerClosed = true;
+        count = 0;
+        notifyAll();
+    }
+
+    private synchronized void write(byte[] data, int offset, int length) throws IOException {
+        if (writerClosed) {
+            throw new IOException("Pipe has been closed for writing");
+        }
+        while (length > 0) {
+            if (readerClosed) {
+                return;
+            }
+            if (count == buffer.length) {
+                waitForChange();
+                continue;
+            }
+            int writePosition = (readPosition + count) % buffer.length;
+            int chunk = Math.min(length, Math.min(buffer.length - count, buffer.length - writePosition));
+            System.arraycopy(data, offset, buffer, writePosition, chunk);
+            count += chunk;
+            offset += chunk;
+            length -= chunk;
+            notifyAll();
+        }
+    }
+
+    private synchronized int read(byte[] data, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (count == 0) {
+            if (readerClosed) {
+                throw new IOException("Pipe has been closed for reading");
+            }
+            if (writerClosed) {
+                return -1;
+            }
+            waitForChange();
+        }
+        int chunk = Math.min(length, Math.min(count, buffer.length - readPosition));
+        System.arraycopy(buffer, readPosition, data, offset, chunk);
+        readPosition = (readPosition + chunk) % buffer.length;
+        count -= chunk;
+        notifyAll();
+        return chunk;
+    }
+
+    private synchronized int available() {
+        return count;
+    }
+
+    private void waitForChange() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            InterruptedIOException exception = new InterruptedIOException("Interrupted while waiting on pipe");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int result = BoundedPipe.this.read(single, 0, 1);
+            return (result == -1 ? -1 : (single[0] & 0xff));
+        }
+
+        @Override
+        public int read(byte[] data, int offset, int length) throws IOException {
+            return BoundedPipe.this.read(data, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return BoundedPipe.this.available();
+        }
+
+        @Override
+        public void close() {
+            closeReader();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            BoundedPipe.this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            BoundedPipe.this.write(data, offset, length);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import hudson.Launcher;
@@ -27,21 +29,41 @@ import hudson.util.VariableResolver;
  * <li> Any environment variable that is set on the Node that the Launcher is
  * being executed on (slave or master)</li> 
  * </ul> 
+ * <p>
+ * Resolved variables are remembered by the resolver, and the environment variables and system
+ * properties of a computer are shared by all resolvers for the number of seconds in the
+ * {@link #COMPUTER_VALUES_TIME_TO_LIVE} system property, so they are not retrieved from the node
+ * for every variable.
  * 
  * @author Erik Ramfelt
  */
 public class BuildVariableResolver implements VariableResolver<String> {
     
+    /** System property that sets the number of seconds the environment variables and system properties of a computer are cached */
+    public static final String COMPUTER_VALUES_TIME_TO_LIVE = "tfs.computer.valuesttl";
+
+    static final int DEFAULT_COMPUTER_VALUES_TIME_TO_LIVE = 60;
+
+    private static final ComputerValuesCache COMPUTER_VALUES = new ComputerValuesCache(
+            TimeUnit.SECONDS.toMillis(Integer.getInteger(COMPUTER_VALUES_TIME_TO_LIVE, DEFAULT_COMPUTER_VALUES_TIME_TO_LIVE)));
+
     private Map<String,LazyResolver> lazyResolvers = new HashMap<String, LazyResolver>();
     
     private List<VariableResolver<String>> otherResolvers = new ArrayList<VariableResolver<String>>();
     
+    private final Map<String, String> resolvedVariables = new HashMap<String, String>();
+
+    private boolean computerEnvVarsAreAdded;
+
     private final Launcher launcher;
 
+    private final ComputerValuesCache computerValues;
+
     private static final Logger LOGGER = Logger.getLogger(BuildVariableResolver.class.getName());
     
     public BuildVariableResolver(final Job<?, ?> job) {
         launcher = null;
+        computerValues = COMPUTER_VALUES;
         lazyResolvers.put("JOB_NAME", new LazyResolver() {
             public String getValue() {
                 return job.getName();
@@ -50,7 +72,12 @@ public class BuildVariableResolver implements VariableResolver<String> {
     }
     
     public BuildVariableResolver(final AbstractProject<?, ?> project, final Launcher launcher) {
+        this(project, launcher, COMPUTER_VALUES);
+    }
+
+    BuildVariableResolver(final AbstractProject<?, ?> project, final Launcher launcher, final ComputerValuesCache computerValues) {
         this.launcher = launcher;
+        this.computerValues = computerValues;
         lazyResolvers.put("JOB_NAME", new LazyResolver() {
             public String getValue() {
                 return project.getName();
@@ -63,7 +90,7 @@ public class BuildVariableResolver implements VariableResolver<String> {
         });
         lazyResolvers.put("USER_NAME", new LazyComputerResolver() {
             public String getValue(Computer computer) throws IOException, InterruptedException {
-                return (String) computer.getSystemProperties().get("user.name");
+                return (String) computerValues.getSystemProperties(computer).get("user.name");
             }            
         });
     }
@@ -87,15 +114,22 @@ public class BuildVariableResolver implements VariableResolver<String> {
     }
     
     public String resolve(String variable) {
+        if (resolvedVariables.containsKey(variable)) {
+            return resolvedVariables.get(variable);
+        }
         try {
+            String value;
             if (lazyResolvers.containsKey(variable)) {
-                return lazyResolvers.get(variable).getValue();
+                value = lazyResolvers.get(variable).getValue();
             } else {
-                if ((launcher != null) && (launcher.getComputer() != null)) {
-                    otherResolvers.add(new VariableResolver.ByMap<String>(launcher.getComputer().getEnvVars()));
+                if (!computerEnvVarsAreAdded && (launcher != null) && (launcher.getComputer() != null)) {
+                    otherResolvers.add(new VariableResolver.ByMap<String>(computerValues.getEnvVars(launcher.getComputer())));
+                    computerEnvVarsAreAdded = true;
                 }
-                return new VariableResolver.Union<String>(otherResolvers).resolve(variable);
+                value = new VariableResolver.Union<String>(otherResolvers).resolve(variable);
             }
+            resolvedVariables.put(variable, value);
+            return value;
         } catch (Exception e) {
             LOGGER.warning("Variable name '" + variable + "' look up failed because of " + e);
         }
@@ -123,4 +157,51 @@ public class BuildVariableResolver implements VariableResolver<String> {
             }
         }
     }
+
+    /**
+     * Cache of the environment variables and system properties of computers, that are retrieved
+     * from the node when they are not cached or the cached values have expired.
+     */
+    static class ComputerValuesCache {
+        private final Map<Computer, CachedValues> values = new WeakHashMap<Computer, CachedValues>();
+        private final long timeToLive;
+
+        /**
+         * @param timeToLive number of milliseconds the values of a computer are cached
+         */
+        ComputerValuesCache(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public Map<String, String> getEnvVars(Computer computer) throws IOException, InterruptedException {
+            CachedValues cachedValues = getCachedValues(computer);
+            if (cachedValues.envVars == null) {
+                cachedValues.envVars = computer.getEnvVars();
+            }
+            return cachedValues.envVars;
+        }
+
+        public Map<Object, Object> getSystemProperties(Computer computer) throws IOException, InterruptedException {
+            CachedValues cachedValues = getCachedValues(computer);
+            if (cachedValues.systemProperties == null) {
+                cachedValues.systemProperties = computer.getSystemProperties();
+            }
+            return cachedValues.systemProperties;
+        }
+
+        private synchronized CachedValues getCachedValues(Computer computer) {
+            CachedValues cachedValues = values.get(computer);
+            if ((cachedValues == null) || (System.currentTimeMillis() - cachedValues.created >= timeToLive)) {
+                cachedValues = new CachedValues();
+                values.put(computer, cachedValues);
+            }
+            return cachedValues;
+        }
+    }
+
+    private static class CachedValues {
+        private final long created = System.currentTimeMillis();
+        private volatile Map<String, String> envVars;
+        private volatile Map<Object, Object> systemProperties;
+    }
 }
@@ -2,6 +2,7 @@ package hudson.plugins.tfs.util;
 
 import java.text.DateFormat;
 import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -9,9 +10,27 @@ import java.util.List;
 import java.util.Locale;
 import java.util.SimpleTimeZone;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 public class DateUtil {
 
+    private static final Pattern PM_PATTERN = Pattern.compile("(p|P)\\.(m|M)\\.");
+    private static final Pattern AM_PATTERN = Pattern.compile("(a|A)\\.(m|M)\\.");
+
+    /** Date formats for a locale and time zone, created once and shared by all threads */
+    private static final ConcurrentMap<String, LocaleDateFormats> LOCALE_DATE_FORMATS = new ConcurrentHashMap<String, LocaleDateFormats>();
+
+    /** The words that Date.parse knows, a word in the date string must be the start of one of them */
+    private static final String[] DATE_PARSE_WORDS = {
+        "am", "pm",
+        "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday",
+        "january", "february", "march", "april", "may", "june",
+        "july", "august", "september", "october", "november", "december",
+        "gmt", "ut", "utc", "est", "edt", "cst", "cdt", "mst", "mdt", "pst", "pdt"
+    };
+
     private DateUtil() {        
     }
 
@@ -28,40 +47,104 @@ public class DateUtil {
         return parseDate(dateString, Locale.getDefault(), TimeZone.getDefault());
     }
     
+    /**
+     * Parses the date string as it is output by the TF command line client.
+     * <p>
+     * Date.parse is always tried first, so an ambiguous date such as "03/04/2010" is parsed the same
+     * regardless of which dates that have been parsed before. It is only called if the date string
+     * can be parsed by it, as it throws an exception for every date of a non English locale.
+     * The date formats for the locale and time zone are cached, and the format that parsed the
+     * last date in the locale is tried first.
+     */
     @SuppressWarnings("deprecation")
     public static Date parseDate(String dateString, Locale locale, TimeZone timezone) throws ParseException {
-        Date date = null;
-        dateString = dateString.replaceAll("(p|P)\\.(m|M)\\.", "PM").replaceAll("(a|A)\\.(m|M)\\.", "AM");
-        try {
-            // Use the deprecated Date.parse method as this is very good at detecting
-            // dates commonly output by the US and UK standard locales of dotnet that
-            // are output by the Microsoft command line client.
-            date = new Date(Date.parse(dateString));
-        } catch (IllegalArgumentException e) {
-            // ignore - parse failed.
+        if (dateString.indexOf('.') != -1) {
+            dateString = AM_PATTERN.matcher(PM_PATTERN.matcher(dateString).replaceAll("PM")).replaceAll("AM");
         }
-        if (date == null) {
-            // The old fashioned way did not work. Let's try it using a more
-            // complex alternative.
-            DateFormat[] formats = createDateFormatsForLocaleAndTimeZone(locale, timezone);
-            return parseWithFormats(dateString, formats);
+        if (isDateParseInput(dateString)) {
+            try {
+                // Use the deprecated Date.parse method as this is very good at detecting
+                // dates commonly output by the US and UK standard locales of dotnet that
+                // are output by the Microsoft command line client.
+                return new Date(Date.parse(dateString));
+            } catch (IllegalArgumentException e) {
+                // ignore - parse failed.
+            }
         }
-        return date;
+        // The old fashioned way did not work. Let's try it using a more
+        // complex alternative.
+        return getLocaleDateFormats(locale, timezone).parse(dateString);
     }
 
-    static Date parseWithFormats(String input, DateFormat[] formats) throws ParseException {
-        ParseException parseException = null;
-        for (int i = 0; i < formats.length; i++) {
-            try {
-                return formats[i].parse(input);
-            } catch (ParseException ex) {
-                parseException = ex;
+    /**
+     * Returns if the date string only contains characters and words that Date.parse knows. 
+     * This is checked without exceptions, so that dates of non English locales do not cost an
+     * exception each. A date string that is rejected here would also have been rejected by Date.parse.
+     */
+    static boolean isDateParseInput(String dateString) {
+        int length = dateString.length();
+        int i = 0;
+        while (i < length) {
+            char c = dateString.charAt(i);
+            if (isAsciiLetter(c)) {
+                int start = i;
+                while ((i < length) && isAsciiLetter(dateString.charAt(i))) {
+                    i++;
+                }
+                if (!isDateParseWord(dateString, start, i - start)) {
+                    return false;
+                }
+            } else if (c == '(') {
+                // Date.parse skips comments, leave them to it
+                return true;
+            } else if ((c <= ' ') || (c == ',') || (c == '/') || (c == ':') || (c == '+') || (c == '-')
+                    || ((c >= '0') && (c <= '9'))) {
+                i++;
+            } else {
+                return false;
             }
         }
-        if (parseException == null) {
-            throw new IllegalStateException("No dateformats found that can be used for parsing '" + input + "'");
+        return true;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z'));
+    }
+
+    private static boolean isDateParseWord(String dateString, int start, int length) {
+        if (length < 2) {
+            return false;
+        }
+        for (String word : DATE_PARSE_WORDS) {
+            if (word.regionMatches(true, 0, dateString, start, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static LocaleDateFormats getLocaleDateFormats(Locale locale, TimeZone timezone) {
+        String key = locale.toString() + "|" + (timezone == null ? "" : timezone.getID());
+        LocaleDateFormats formats = LOCALE_DATE_FORMATS.get(key);
+        if (formats == null) {
+            formats = new LocaleDateFormats(createDateFormatsForLocaleAndTimeZone(locale, timezone));
+            LocaleDateFormats existingFormats = LOCALE_DATE_FORMATS.putIfAbsent(key, formats);
+            if (existingFormats != null) {
+                formats = existingFormats;
+            }
+        }
+        return formats;
+    }
+
+    /**
+     * Parses the input with the format without throwing an exception, as the formats are tried one after another.
+     * @return the date; or null if the format could not parse the input
+     */
+    private static Date parse(DateFormat format, String input, ParsePosition position) {
+        // Date formats are not thread safe
+        synchronized (format) {
+            return format.parse(input, position);
         }
-        throw parseException;
     }
 
     /**
@@ -96,4 +179,50 @@ public class DateUtil {
             }
         }
     }
+
+    /**
+     * Date formats for a locale and time zone, that remembers which format that parsed the last date.
+     * The formats of one locale order the day, month and year the same way, so a format that parses
+     * the whole input gives the same date regardless of which format that is tried first.
+     */
+    private static class LocaleDateFormats {
+        private final DateFormat[] formats;
+        private volatile int matchedFormatIndex = -1;
+
+        public LocaleDateFormats(DateFormat[] formats) {
+            this.formats = formats;
+        }
+
+        /**
+         * Returns the date parsed with the format that matched the previous date, or else with the
+         * first format that can parse the input. A format is only remembered if it parsed the whole
+         * input, so a format that ignores the time part is not used for a date that has a time.
+         */
+        public Date parse(String input) throws ParseException {
+            if (formats.length == 0) {
+                throw new IllegalStateException("No dateformats found that can be used for parsing '" + input + "'");
+            }
+            int index = matchedFormatIndex;
+            if (index != -1) {
+                ParsePosition position = new ParsePosition(0);
+                Date date = DateUtil.parse(formats[index], input, position);
+                if ((date != null) && (position.getIndex() == input.length())) {
+                    return date;
+                }
+            }
+            int errorIndex = 0;
+            for (int i = 0; i < formats.length; i++) {
+                ParsePosition position = new ParsePosition(0);
+                Date date = DateUtil.parse(formats[i], input, position);
+                if (date != null) {
+                    if (position.getIndex() == input.length()) {
+                        matchedFormatIndex = i;
+                    }
+                    return date;
+                }
+                errorIndex = position.getErrorIndex();
+            }
+            throw new ParseException("Unparseable date: \"" + input + "\"", errorIndex);
+        }
+    }
 }
@@ -0,0 +1,113 @@
+package hudson.plugins.tfs.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+/**
+ * Copies the files in a folder to another folder on the same node, so the target folder
+ * contains the same files as the source folder.
+ * <p>
+ * Only files that are new or that have another size or modification time than the copy are copied.
+ * The copied files are listed in a manifest, so files that have been removed from the source folder are
+ * removed from the target folder, while other files in the target folder (such as build results) are kept.
+ */
+public class FolderMirror {
+
+    private final FilePath source;
+    private final FilePath manifest;
+
+    /**
+     * @param source the folder that is mirrored
+     * @param manifest the file that lists the files that have been copied to the target folder
+     */
+    public FolderMirror(FilePath source, FilePath manifest) {
+        this.source = source;
+        this.manifest = manifest;
+    }
+
+    /**
+     * Copies the changed files to the target folder
+     * @param target the target folder, it must be on the same node as the source folder
+     * @return the number of copied files
+     */
+    public int mirror(FilePath target) throws IOException, InterruptedException {
+        return target.act(new MirrorFolder(source.getRemote(), manifest.getRemote()));
+    }
+
+    private static class MirrorFolder implements FileCallable<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final String sourcePath;
+        private final String manifestPath;
+
+        public MirrorFolder(String sourcePath, String manifestPath) {
+            this.sourcePath = sourcePath;
+            this.manifestPath = manifestPath;
+        }
+
+        public Integer invoke(File target, VirtualChannel channel) throws IOException {
+            File manifestFile = new File(manifestPath);
+            Set<String> previousFiles = new HashSet<String>();
+            if (manifestFile.exists()) {
+                previousFiles.addAll(readLines(manifestFile));
+            }
+
+            Set<String> files = new HashSet<String>();
+            int copiedFiles = copyChangedFiles(new File(sourcePath), target, "", files);
+
+            previousFiles.removeAll(files);
+            for (String removedFile : previousFiles) {
+                File file = new File(target, removedFile);
+                if (file.isFile()) {
+                    Util.deleteRecursive(file);
+                }
+            }
+
+            manifestFile.getParentFile().mkdirs();
+            FileUtils.writeLines(manifestFile, "UTF-8", files);
+            return copiedFiles;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<String> readLines(File file) throws IOException {
+            return FileUtils.readLines(file, "UTF-8");
+        }
+
+        private static int copyChangedFiles(File sourceFolder, File targetFolder, String relativePath, Set<String> files) throws IOException {
+            File[] children = sourceFolder.listFiles();
+            if (children == null) {
+                return 0;
+            }
+            int copiedFiles = 0;
+            for (File child : children) {
+                String childPath = relativePath + child.getName();
+                File targetChild = new File(targetFolder, child.getName());
+                if (child.isDirectory()) {
+                    copiedFiles += copyChangedFiles(child, targetChild, childPath + "/", files);
+                } else {
+                    files.add(childPath);
+                    if (!targetChild.isFile() || (targetChild.length() != child.length())
+                            || (targetChild.lastModified() != child.lastModified())) {
+                        if (targetChild.exists()) {
+                            // Files from the TF tool are read only, and can not be overwritten
+                            Util.deleteRecursive(targetChild);
+                        }
+                        FileUtils.copyFile(child, targetChild, true);
+                        copiedFiles++;
+                    }
+                }
+            }
+            return copiedFiles;
+        }
+    }
+}
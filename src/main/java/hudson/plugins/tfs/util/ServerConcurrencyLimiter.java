@@ -0,0 +1,44 @@
+package hudson.plugins.tfs.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of TF commands that parallel checkouts run at the same time against one server.
+ * <p>
+ * The limit is shared by all builds in this JVM, so jobs that get the files while the history of several 
+ * projects is retrieved in parallel do not overload the server. Other commands, and checkouts that are not parallel, are not
+ * limited. The number of permits per server is read from the {@link #MAX_CONCURRENT_COMMANDS} 
+ * system property when the server is first used.
+ */
+public class ServerConcurrencyLimiter {
+
+    /** System property that sets the max number of concurrent commands of parallel checkouts against one server */
+    public static final String MAX_CONCURRENT_COMMANDS = "tfs.server.maxconcurrentcommands";
+
+    static final int DEFAULT_MAX_CONCURRENT_COMMANDS = 4;
+
+    private static final ConcurrentMap<String, Semaphore> SEMAPHORES = new ConcurrentHashMap<String, Semaphore>();
+
+    private ServerConcurrencyLimiter() {
+    }
+
+    /**
+     * Returns the semaphore that limits the concurrent commands of parallel checkouts against the server
+     * @param serverUrl the url of the server
+     * @return the semaphore that is shared by all parallel checkouts against the server
+     */
+    public static Semaphore getSemaphore(String serverUrl) {
+        Semaphore semaphore = SEMAPHORES.get(serverUrl);
+        if (semaphore == null) {
+            int permits = Math.max(1, Integer.getInteger(MAX_CONCURRENT_COMMANDS, DEFAULT_MAX_CONCURRENT_COMMANDS));
+            semaphore = new Semaphore(permits, true);
+            Semaphore existing = SEMAPHORES.putIfAbsent(serverUrl, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+}
@@ -0,0 +1,160 @@
+package hudson.plugins.tfs.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import hudson.Util;
+import hudson.model.TaskListener;
+
+/**
+ * Shares the result of a read only command between the threads that execute the same command
+ * at the same time.
+ * <p>
+ * The first thread that executes a command runs it, and threads that execute an identical command
+ * while it is running wait for its result instead of running the command again. Commands are identical
+ * if they have the same arguments, which include the server and the credentials. Only commands that are
+ * in flight are shared, the result is not kept after the command has completed.
+ */
+public class SingleFlight {
+
+    private static final SingleFlight INSTANCE = new SingleFlight();
+
+    private final ConcurrentMap<String, Execution<?>> inFlight = new ConcurrentHashMap<String, Execution<?>>();
+
+    SingleFlight() {
+    }
+
+    /**
+     * Returns the instance that is shared by all commands in this JVM
+     */
+    public static SingleFlight getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the key for the command arguments
+     */
+    public static String getKey(MaskedArgumentListBuilder arguments) {
+        StringBuilder builder = new StringBuilder();
+        for (String argument : arguments.toCommandArray()) {
+            builder.append(argument).append('\n');
+        }
+        // The arguments contain the password, so only the digest is kept
+        return Util.getDigestOf(builder.toString());
+    }
+
+    /**
+     * Executes the command, or waits for the result of an identical command that is in flight.
+     * @param key the key of the command
+     * @param command the command that returns the parsed result
+     * @return the result of the command, which may be shared with other threads
+     */
+    public <T> T execute(String key, Callable<T> command) throws IOException, InterruptedException, ParseException {
+        return execute(key, command, null);
+    }
+
+    /**
+     * Executes the command, or waits for the result of an identical command that is in flight.
+     * If the identical command is stopped because the thread running it was interrupted, the
+     * command is executed again by this thread.
+     * @param key the key of the command
+     * @param command the command that returns the parsed result
+     * @param listener the listener that is told when this thread waits for an identical command, and
+     * why the identical command failed, as its output is logged to the listener of the thread
+     * that ran it; null if nothing should be logged
+     * @return the result of the command, which may be shared with other threads
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Callable<T> command, TaskListener listener) throws IOException, InterruptedException, ParseException {
+        Execution<T> task = new Execution<T>(command);
+        Execution<?> existingTask = inFlight.putIfAbsent(key, task);
+        if (existingTask == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            return getResult(task);
+        }
+        log(listener, "Waiting for an identical TFS command that is already running");
+        try {
+            existingTask.get();
+        } catch (ExecutionException e) {
+            if (existingTask.isInterrupted()) {
+                // The thread that ran the command was interrupted, but this thread still wants the result
+                log(listener, "The identical TFS command was stopped, running the command again");
+                inFlight.remove(key, existingTask);
+                return execute(key, command, listener);
+            }
+            String message = e.getCause().getMessage();
+            log(listener, "The identical TFS command failed" + (message != null ? ": " + message : ""));
+        }
+        return (T) getResult(existingTask);
+    }
+
+    private static void log(TaskListener listener, String message) {
+        if (listener != null) {
+            listener.getLogger().println(message);
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, InterruptedException, ParseException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Could not execute command: " + cause);
+        }
+    }
+
+    /**
+     * Execution of a command, which knows if it failed because the thread running it was interrupted.
+     * An interrupted TF command does not always fail with an InterruptedException, reading the output
+     * fails with an InterruptedIOException and any other failure may follow from the killed process.
+     */
+    private static class Execution<T> extends FutureTask<T> {
+        private volatile boolean interrupted;
+
+        public Execution(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // Called by the thread that runs the command, before the waiting threads are released
+            interrupted = Thread.currentThread().isInterrupted();
+            for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+                if ((cause instanceof InterruptedException) || (cause instanceof InterruptedIOException)) {
+                    interrupted = true;
+                }
+            }
+            super.setException(t);
+        }
+
+        public boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+}
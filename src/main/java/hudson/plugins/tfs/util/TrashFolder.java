@@ -0,0 +1,150 @@
+package hudson.plugins.tfs.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.FilePath;
+import hudson.FilePath.FileCallable;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+/**
+ * Folder that files are moved to when they should be deleted, so the build does not have to
+ * wait for the delete.
+ * <p>
+ * Deleting a folder with many files can take minutes, while renaming it is almost instant. The
+ * contents of a folder are therefore renamed into the trash folder, and deleted by a few low priority
+ * background threads on the node. Files that were left in the trash folder when the node
+ * was stopped are deleted the first time the trash folder is used again. If a file can not be
+ * renamed (for example if the trash folder is on another volume) it is deleted directly.
+ */
+public class TrashFolder {
+
+    /** System property that sets the number of threads on a node that deletes files in the trash */
+    public static final String DELETER_THREADS = "tfs.trash.deleterthreads";
+
+    static final String NAME = ".tfs-trash";
+    static final int DEFAULT_DELETER_THREADS = 2;
+
+    private static final Logger LOGGER = Logger.getLogger(TrashFolder.class.getName());
+
+    private static final AtomicInteger trashCounter = new AtomicInteger();
+    private static final Set<String> recoveredTrashFolders = new HashSet<String>();
+    private static ExecutorService deleter;
+
+    private final FilePath path;
+
+    public TrashFolder(FilePath path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the trash folder for a Hudson workspace, which is next to the workspace so
+     * it most likely is on the same volume.
+     */
+    public static TrashFolder forWorkspace(FilePath workspace) {
+        FilePath parent = workspace.getParent();
+        return new TrashFolder(parent != null ? parent.child(NAME) : workspace.child(NAME));
+    }
+
+    public FilePath getPath() {
+        return path;
+    }
+
+    /**
+     * Moves the contents of the folder to the trash, where they are deleted in the background.
+     * When the method returns the folder is empty.
+     * @param folder the folder to empty
+     */
+    public void deleteContents(FilePath folder) throws IOException, InterruptedException {
+        folder.act(new MoveContentsToTrash(path.getRemote()));
+    }
+
+    private static class MoveContentsToTrash implements FileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String trashPath;
+
+        public MoveContentsToTrash(String trashPath) {
+            this.trashPath = trashPath;
+        }
+
+        public Void invoke(File folder, VirtualChannel channel) throws IOException {
+            File trash = new File(trashPath).getAbsoluteFile();
+            trash.mkdirs();
+            recover(trash);
+
+            File[] children = folder.listFiles();
+            if (children == null) {
+                return null;
+            }
+            for (File child : children) {
+                if (child.getAbsoluteFile().equals(trash)) {
+                    continue;
+                }
+                File trashedChild = new File(trash, System.currentTimeMillis() + "-" + trashCounter.incrementAndGet() + "-" + child.getName());
+                if (child.renameTo(trashedChild)) {
+                    delete(trashedChild);
+                } else {
+                    Util.deleteRecursive(child);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Schedules the deletion of files that were left in the trash folder,
+     * once for each trash folder in this JVM.
+     */
+    private static void recover(File trash) {
+        synchronized (recoveredTrashFolders) {
+            if (!recoveredTrashFolders.add(trash.getPath())) {
+                return;
+            }
+        }
+        File[] leftovers = trash.listFiles();
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                delete(leftover);
+            }
+        }
+    }
+
+    private static void delete(final File file) {
+        getDeleter().execute(new Runnable() {
+            public void run() {
+                try {
+                    Util.deleteRecursive(file);
+                } catch (IOException e) {
+                    // The file is deleted when the trash folder is recovered the next time
+                    LOGGER.log(Level.WARNING, "Could not delete " + file + " from the trash", e);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getDeleter() {
+        if (deleter == null) {
+            int threads = Math.max(1, Integer.getInteger(DELETER_THREADS, DEFAULT_DELETER_THREADS));
+            deleter = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger threadCounter = new AtomicInteger();
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TFS trash deleter " + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return deleter;
+    }
+}
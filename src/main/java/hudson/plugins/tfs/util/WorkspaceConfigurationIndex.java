@@ -0,0 +1,194 @@
+package hudson.plugins.tfs.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.Job;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.plugins.tfs.util.BuildWorkspaceConfigurationRetriever.BuildWorkspaceConfiguration;
+
+/**
+ * Index of the latest workspace configuration on each node that a job has been built on.
+ * <p>
+ * The index is stored in the folder of the job, and is updated on every checkout so the
+ * workspace configuration for a node can be found without walking through the builds of the job.
+ * The first time the index is used for a job, it is created from the builds of the job.
+ * The indexes are kept in a weak map by job, so deleted jobs are not held on to; and a renamed 
+ * job gets a new index in its new folder.
+ */
+public class WorkspaceConfigurationIndex {
+
+    static final String FILE_NAME = "tfs-workspace-configurations.xml";
+
+    private static final Logger LOGGER = Logger.getLogger(WorkspaceConfigurationIndex.class.getName());
+
+    private static final Map<Job<?, ?>, WorkspaceConfigurationIndex> INDEXES = new WeakHashMap<Job<?, ?>, WorkspaceConfigurationIndex>();
+
+    private final Reference<Job<?, ?>> job;
+    private final XmlFile file;
+    private Entries entries;
+
+    WorkspaceConfigurationIndex(Job<?, ?> job, XmlFile file) {
+        // The index is the value of the job in the weak map, so it must not keep the job reachable
+        this.job = new WeakReference<Job<?, ?>>(job);
+        this.file = file;
+    }
+
+    /**
+     * Returns the index of the job, which is shared by all builds of the job
+     */
+    public static WorkspaceConfigurationIndex forJob(Job<?, ?> job) {
+        File indexFile = new File(job.getRootDir(), FILE_NAME);
+        synchronized (INDEXES) {
+            WorkspaceConfigurationIndex index = INDEXES.get(job);
+            if ((index == null) || !index.file.getFile().equals(indexFile)) {
+                // The job has not been indexed, or it has been renamed since it was indexed
+                index = new WorkspaceConfigurationIndex(job, new XmlFile(indexFile));
+                INDEXES.put(job, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the latest workspace configuration on the node
+     * @param node the node to get the workspace configuration for
+     * @param latestRun the latest run of the job, which the index is created from if it does not exist
+     * @return the workspace configuration; null if there is no workspace configuration for the node
+     */
+    public synchronized BuildWorkspaceConfiguration getLatestForNode(Node node, Run<?, ?> latestRun) throws IOException {
+        NodeEntry entry = load(latestRun).nodes.get(node.getNodeName());
+        if ((entry == null) || (entry.configuration == null)) {
+            return null;
+        }
+        return new IndexedWorkspaceConfiguration(node.getNodeName(), entry);
+    }
+
+    /**
+     * Returns the names of the nodes that the job has been built on
+     * @param latestRun the latest run of the job, which the index is created from if it does not exist
+     */
+    public synchronized Set<String> getNodeNames(Run<?, ?> latestRun) throws IOException {
+        return new HashSet<String>(load(latestRun).nodes.keySet());
+    }
+
+    /**
+     * Stores the workspace configuration of the build as the latest configuration on the node it is built on.
+     * It should be called when the files have been checked out to the workspace, also if the checkout
+     * failed as the TFS workspace may have been created.
+     */
+    public synchronized void put(AbstractBuild<?, ?> build, WorkspaceConfiguration configuration) throws IOException {
+        Entries loadedEntries = load(build.getPreviousBuild());
+        String nodeName = Util.fixNull(build.getBuiltOnStr());
+        NodeEntry entry = loadedEntries.nodes.get(nodeName);
+        if ((entry == null) || (entry.buildNumber <= build.getNumber())) {
+            loadedEntries.nodes.put(nodeName, new NodeEntry(build.getNumber(), new WorkspaceConfiguration(configuration)));
+            file.write(loadedEntries);
+        }
+    }
+
+    /**
+     * Loads the index from the file, or creates it from the builds if the index has not been created.
+     */
+    private Entries load(Run<?, ?> latestRun) throws IOException {
+        if (entries == null) {
+            if (file.exists()) {
+                try {
+                    entries = (Entries) file.read();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not read " + file + ", it is created again from the builds", e);
+                }
+            }
+            if (entries == null) {
+                entries = createFromBuilds(latestRun);
+                file.write(entries);
+            }
+        }
+        return entries;
+    }
+
+    private static Entries createFromBuilds(Run<?, ?> latestRun) {
+        Entries createdEntries = new Entries();
+        Set<String> visitedNodes = new HashSet<String>();
+        for (Run<?, ?> run = latestRun; run instanceof AbstractBuild<?, ?>; run = run.getPreviousBuild()) {
+            AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) run;
+            String nodeName = Util.fixNull(build.getBuiltOnStr());
+            if (visitedNodes.add(nodeName)) {
+                WorkspaceConfiguration configuration = build.getAction(WorkspaceConfiguration.class);
+                createdEntries.nodes.put(nodeName, new NodeEntry(build.getNumber(),
+                        configuration != null ? new WorkspaceConfiguration(configuration) : null));
+            }
+        }
+        return createdEntries;
+    }
+
+    private synchronized void markWorkspaceAsRemoved(String nodeName, int buildNumber) throws IOException {
+        NodeEntry entry = entries.nodes.get(nodeName);
+        if ((entry != null) && (entry.buildNumber == buildNumber) && (entry.configuration != null)) {
+            entry.configuration.setWorkspaceWasRemoved();
+            file.write(entries);
+        }
+    }
+
+    /**
+     * Workspace configuration from the index, that is saved to the index and to its build.
+     */
+    private class IndexedWorkspaceConfiguration extends BuildWorkspaceConfiguration {
+        private static final long serialVersionUID = 1L;
+        private final String nodeName;
+        private final int buildNumber;
+
+        public IndexedWorkspaceConfiguration(String nodeName, NodeEntry entry) {
+            super(entry.configuration, null);
+            this.nodeName = nodeName;
+            this.buildNumber = entry.buildNumber;
+        }
+
+        @Override
+        public void save() throws IOException {
+            if (!workspaceExists()) {
+                markWorkspaceAsRemoved(nodeName, buildNumber);
+            }
+            Job<?, ?> indexedJob = job.get();
+            Run<?, ?> build = (indexedJob != null ? indexedJob.getBuildByNumber(buildNumber) : null);
+            if (build != null) {
+                WorkspaceConfiguration configuration = build.getAction(WorkspaceConfiguration.class);
+                if ((configuration != null) && !workspaceExists()) {
+                    configuration.setWorkspaceWasRemoved();
+                }
+                build.save();
+            }
+        }
+    }
+
+    /**
+     * The entries that are stored in the index file
+     */
+    static class Entries {
+        private final Map<String, NodeEntry> nodes = new HashMap<String, NodeEntry>();
+    }
+
+    static class NodeEntry {
+        private final int buildNumber;
+        private final WorkspaceConfiguration configuration;
+
+        public NodeEntry(int buildNumber, WorkspaceConfiguration configuration) {
+            this.buildNumber = buildNumber;
+            this.configuration = configuration;
+        }
+    }
+}
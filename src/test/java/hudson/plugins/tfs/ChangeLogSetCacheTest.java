@@ -0,0 +1,104 @@
+package hudson.plugins.tfs;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import hudson.model.AbstractBuild;
+import hudson.plugins.tfs.model.ChangeLogSet;
+import hudson.plugins.tfs.model.ChangeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChangeLogSetCacheTest {
+
+    private File changelogFile;
+    private File changelogFile2;
+
+    @Before
+    public void setUp() throws Exception {
+        changelogFile = File.createTempFile("changelog", ".xml");
+        changelogFile2 = File.createTempFile("changelog", ".xml");
+        FileUtils.writeStringToFile(changelogFile, "<changelog/>");
+        FileUtils.writeStringToFile(changelogFile2, "<changelog/>");
+    }
+
+    @After
+    public void tearDown() {
+        changelogFile.delete();
+        changelogFile2.delete();
+    }
+
+    private static List<ChangeSet> createChangeSets(String version) {
+        List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+        ChangeSet changeSet = new ChangeSet(version, new Date(), "DOMAIN\\user", "comment");
+        changeSet.add(new ChangeSet.Item("$/tfsandbox/path", "edit"));
+        changeSets.add(changeSet);
+        return changeSets;
+    }
+
+    @Test
+    public void assertCachedChangeSetsAreReturned() {
+        ChangeLogSetCache cache = new ChangeLogSetCache(10, 1024);
+        assertNull("A change log set was returned before it was cached", cache.get(null, changelogFile));
+        cache.put(changelogFile, createChangeSets("12"));
+        ChangeLogSet changeLogSet = cache.get(null, changelogFile);
+        assertNotNull("The cached change log set was not returned", changeLogSet);
+        ChangeSet changeSet = changeLogSet.iterator().next();
+        assertEquals("The version was incorrect", "12", changeSet.getVersion());
+        assertEquals("The user was incorrect", "user", changeSet.getUser());
+        assertEquals("The domain was incorrect", "DOMAIN", changeSet.getDomain());
+        assertEquals("The item path was incorrect", "$/tfsandbox/path", changeSet.getItems().get(0).getPath());
+        assertSame("The change set did not belong to the returned change log set", changeLogSet, changeSet.getParent());
+        assertEquals("The hit count was incorrect", 1, cache.getHitCount());
+        assertEquals("The miss count was incorrect", 1, cache.getMissCount());
+    }
+
+    @Test
+    public void assertCachedChangeSetsAreReturnedForReloadedBuild() {
+        ChangeLogSetCache cache = new ChangeLogSetCache(10, 1024);
+        AbstractBuild<?,?> build = mock(AbstractBuild.class);
+        AbstractBuild<?,?> reloadedBuild = mock(AbstractBuild.class);
+        cache.put(changelogFile, createChangeSets("12"));
+        ChangeLogSet changeLogSet = cache.get(build, changelogFile);
+        ChangeLogSet reloadedChangeLogSet = cache.get(reloadedBuild, changelogFile);
+        assertNotNull("The change log set for the reloaded build was not returned", reloadedChangeLogSet);
+        assertSame("The change log set was not bound to the build", build, changeLogSet.build);
+        assertSame("The change log set was not bound to the reloaded build", reloadedBuild, reloadedChangeLogSet.build);
+        assertNotSame("The change sets were shared between the change log sets", 
+                changeLogSet.iterator().next(), reloadedChangeLogSet.iterator().next());
+    }
+
+    @Test
+    public void assertChangedFileIsNotReturnedFromCache() throws Exception {
+        ChangeLogSetCache cache = new ChangeLogSetCache(10, 1024);
+        cache.put(changelogFile, createChangeSets("12"));
+        FileUtils.writeStringToFile(changelogFile, "<changelog></changelog>");
+        assertNull("The change log set for a changed file was returned", cache.get(null, changelogFile));
+    }
+
+    @Test
+    public void assertLargeFileIsNotCached() {
+        ChangeLogSetCache cache = new ChangeLogSetCache(10, 5);
+        cache.put(changelogFile, createChangeSets("12"));
+        assertEquals("The change log set for a large file was cached", 0, cache.size());
+    }
+
+    @Test
+    public void assertLeastRecentlyUsedIsEvicted() {
+        ChangeLogSetCache cache = new ChangeLogSetCache(1, 1024);
+        cache.put(changelogFile, createChangeSets("12"));
+        cache.put(changelogFile2, createChangeSets("13"));
+        assertEquals("The number of cached change log sets was incorrect", 1, cache.size());
+        assertNull("The least recently used change log set was not evicted", cache.get(null, changelogFile));
+        assertEquals("The most recently used change log set was evicted", "13", 
+                cache.get(null, changelogFile2).iterator().next().getVersion());
+    }
+}
@@ -1,14 +1,18 @@
 package hudson.plugins.tfs;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 import hudson.plugins.tfs.model.ChangeLogSet;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.model.ChangeSet.Item;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 import org.xml.sax.SAXException;
 
@@ -71,6 +75,32 @@ public class ChangeSetReaderTest {
         assertSame("The item's parent is not the same as the change set it belongs to", changeset, item.getParent());
     }
 
+    @Test
+    public void assertLazyItemsAreReadCorrectly() throws Exception {
+        Reader reader = new StringReader("<?xml version=\"1.0\" encoding=\"UTF-8\"?><changelog>" +
+                            "<changeset version=\"1122\">" +
+                                "<date>2009-01-12T00:00:00Z</date>" +
+                                "<user>snd\\user</user>" +
+                                "<comment>comment</comment>" +
+                                "<items>" +
+                                    "<item action=\"add\">path</item>" +
+                                    "<item action=\"delete\">path2</item>" +
+                                "</items>" +
+                            "</changeset>" +
+                        "</changelog>");
+        
+        ChangeSetReader changesetReader = new ChangeSetReader(true);
+        ChangeLogSet logset = changesetReader.parse(null, reader);
+        
+        ChangeSet changeset = logset.iterator().next();
+        assertEquals("Comment is incorrect", "comment", changeset.getComment());
+        assertEquals("Number of items in change set was incorrect", 2, changeset.getItems().size());
+        Item item = changeset.getItems().get(1);
+        assertEquals("Action is incorrect", "delete", item.getAction());
+        assertEquals("Path is incorrect", "path2", item.getPath());
+        assertSame("The item's parent is not the same as the change set it belongs to", changeset, item.getParent());
+    }
+
     public void assertXmlWithEscapedCharsIsReadCorrectly() throws Exception {
         Reader reader = new StringReader("<?xml version=\"1.0\" encoding=\"UTF-8\"?><changelog>" +
                 "<changeset version=\"1122\">" +
@@ -90,4 +120,37 @@ public class ChangeSetReaderTest {
         ChangeSet changeset = logset.iterator().next();
         assertEquals("The chage set's comment is incorrect", "Just <testing> \"what\" happens when I use the & character...Hudson does not seem to like it!", changeset.getComment());
     }
+
+    private static final String NON_ASCII_CHANGELOG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><changelog>" +
+                            "<changeset version=\"1122\">" +
+                                "<date>2009-01-12T00:00:00Z</date>" +
+                                "<user>snd\\R\u00e4mfelt</user>" +
+                                "<comment>\u00e5\u00e4\u00f6</comment>" +
+                            "</changeset>" +
+                        "</changelog>";
+
+    @Test
+    public void assertChangeLogFileInUtf8IsRead() throws Exception {
+        assertNonAsciiChangeLogFileIsRead("UTF-8");
+    }
+
+    @Test
+    public void assertChangeLogFileInPlatformEncodingIsRead() throws Exception {
+        // Change logs written by older versions are in the platform encoding, even though UTF-8 is declared
+        Charset charset = Charset.defaultCharset();
+        assumeTrue(charset.newEncoder().canEncode(NON_ASCII_CHANGELOG));
+        assertNonAsciiChangeLogFileIsRead(charset.name());
+    }
+
+    private void assertNonAsciiChangeLogFileIsRead(String encoding) throws Exception {
+        File changelogFile = File.createTempFile("changelog", ".xml");
+        try {
+            FileUtils.writeStringToFile(changelogFile, NON_ASCII_CHANGELOG, encoding);
+            ChangeSet changeset = new ChangeSetReader().parse(null, changelogFile).iterator().next();
+            assertEquals("User is incorrect", "R\u00e4mfelt", changeset.getUser());
+            assertEquals("Comment is incorrect", "\u00e5\u00e4\u00f6", changeset.getComment());
+        } finally {
+            changelogFile.delete();
+        }
+    }
 }
@@ -1,11 +1,15 @@
 package hudson.plugins.tfs;
 
 import static org.custommonkey.xmlunit.XMLAssert.*;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
 import java.io.StringWriter;
 import java.util.ArrayList;
 
 import hudson.plugins.tfs.model.ChangeSet;
 
+import org.apache.commons.io.FileUtils;
 import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.Before;
 import org.junit.Test;
@@ -61,6 +65,51 @@ public class ChangeSetWriterTest {
                         "</changelog>", output.getBuffer().toString());
     }
 
+    @Test
+    public void assertChangeSetsCanBeWrittenOneAtATime() throws Exception {
+        ChangeSet changeset = new ChangeSet("1122", Util.getCalendar(2008, 12, 12).getTime(), "user", "comment");
+        ChangeSet changeset2 = new ChangeSet("1123", Util.getCalendar(2008, 12, 13).getTime(), "user", "comment2");
+        changeset2.getItems().add(new ChangeSet.Item("path", "edit"));
+
+        ChangeSetWriter changesetWriter = new ChangeSetWriter();
+        StringWriter output = new StringWriter();
+        changesetWriter.writeHeader(output);
+        changesetWriter.write(changeset, output);
+        changesetWriter.write(changeset2, output);
+        changesetWriter.writeFooter(output);
+        assertXMLEqual("<?xml version=\"1.0\" encoding=\"UTF-8\"?><changelog>" +
+                            "<changeset version=\"1122\">" +
+                                "<date>2008-12-12T00:00:00Z</date>" +
+                                "<user>user</user>" +
+                                "<comment>comment</comment>" +
+                            "</changeset>" +
+                            "<changeset version=\"1123\">" +
+                                "<date>2008-12-13T00:00:00Z</date>" +
+                                "<user>user</user>" +
+                                "<comment>comment2</comment>" +
+                                "<items>" +
+                                    "<item action=\"edit\">path</item>" +
+                                "</items>" +
+                            "</changeset>" +
+                        "</changelog>", output.getBuffer().toString());
+    }
+
+    @Test
+    public void assertChangeLogFileIsWrittenInUtf8() throws Exception {
+        ChangeSet changeset = new ChangeSet("1122", Util.getCalendar(2008, 12, 12).getTime(), "user", "r\u00e4ksm\u00f6rg\u00e5s");
+        ArrayList<ChangeSet> sets = new ArrayList<ChangeSet>();
+        sets.add(changeset);
+
+        File file = File.createTempFile("changelog", ".xml");
+        try {
+            new ChangeSetWriter().write(sets, file);
+            String content = FileUtils.readFileToString(file, "UTF-8");
+            assertTrue("The comment was not written in UTF-8", content.contains("<comment>r\u00e4ksm\u00f6rg\u00e5s</comment>"));
+        } finally {
+            file.delete();
+        }
+    }
+
     @Test
     public void assertXmlCharsAreEscaped() throws Exception {
         ChangeSet changeset = new ChangeSet("1122", Util.getCalendar(2008, 12, 12).getTime(), "user", "Just <testing> \"what\" happens when I use the & character...Hudson does not seem to like it!");
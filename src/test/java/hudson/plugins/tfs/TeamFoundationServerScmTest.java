@@ -14,6 +14,7 @@ import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Node;
 import hudson.model.ParametersAction;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
 
 import org.junit.After;
 import org.junit.Test;
@@ -106,16 +107,32 @@ public class TeamFoundationServerScmTest {
     @Test
     public void assertWorkspaceNameIsAddedToEnvVars() throws Exception {
         TeamFoundationServerScm scm = new TeamFoundationServerScm("serverurl", "projectpath", ".", false, "WORKSPACE_SAMPLE", "user", "password");
-        AbstractBuild build = mock(AbstractBuild.class);
-        AbstractProject project = mock(AbstractProject.class);
-        when(build.getProject()).thenReturn(project);
-        scm.getWorkspaceName(build, mock(Launcher.class));
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(WorkspaceConfiguration.class)).thenReturn(new WorkspaceConfiguration("serverurl", "WORKSPACE_SAMPLE", "projectpath", "."));
         
         Map<String, String> env = new HashMap<String, String>();
         scm.buildEnvVars(build, env );        
         assertEquals("The workspace name was incorrect", "WORKSPACE_SAMPLE", env.get(TeamFoundationServerScm.WORKSPACE_ENV_STR));
     }
     
+    @Test
+    public void assertEnvVarsAreReadFromBuild() throws Exception {
+        TeamFoundationServerScm scm = new TeamFoundationServerScm("${SERVER}", "$/${PATH}", ".", false, "${WORKSPACE_NAME}", "user", "password");
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getAction(WorkspaceConfiguration.class)).thenReturn(new WorkspaceConfiguration("http://server1", "workspace1", "$/path1", "."));
+        AbstractBuild otherBuild = mock(AbstractBuild.class);
+        when(otherBuild.getAction(WorkspaceConfiguration.class)).thenReturn(new WorkspaceConfiguration("http://server2", "workspace2", "$/path2", "."));
+        
+        Map<String, String> env = new HashMap<String, String>();
+        scm.buildEnvVars(build, env);
+        Map<String, String> otherEnv = new HashMap<String, String>();
+        scm.buildEnvVars(otherBuild, otherEnv);
+        assertEquals("The workspace name was incorrect", "workspace1", env.get(TeamFoundationServerScm.WORKSPACE_ENV_STR));
+        assertEquals("The project path was incorrect", "$/path1", env.get(TeamFoundationServerScm.PROJECTPATH_ENV_STR));
+        assertEquals("The server URL was incorrect", "http://server1", env.get(TeamFoundationServerScm.SERVERURL_ENV_STR));
+        assertEquals("The workspace name of the other build was incorrect", "workspace2", otherEnv.get(TeamFoundationServerScm.WORKSPACE_ENV_STR));
+    }
+    
     @Test
     public void assertWorksfolderPathIsAddedToEnvVars() throws Exception {
         TeamFoundationServerScm scm = new TeamFoundationServerScm("serverurl", "projectpath", "PATH", false, "WORKSPACE_SAMPLE", "user", "password");
@@ -221,20 +238,18 @@ public class TeamFoundationServerScmTest {
         AbstractBuild build = mock(AbstractBuild.class);
         Node node = mock(Node.class);
         Node inNode = mock(Node.class);
+        workspace = Util.createTempFilePath();
+        workspace.mkdirs();
+        when(project.getRootDir()).thenReturn(new File(workspace.getRemote()));
         when(project.getLastBuild()).thenReturn(build);
         when(build.getPreviousBuild()).thenReturn(build).thenReturn(null);
-        when(build.getBuiltOn()).thenReturn(node).thenReturn(node);
-        when(node.getNodeName()).thenReturn("node1").thenReturn("node2");
+        when(build.getBuiltOnStr()).thenReturn("node1").thenReturn("node2");
         when(inNode.getNodeName()).thenReturn("needleNode").thenReturn("needleNode");
         TeamFoundationServerScm scm = new TeamFoundationServerScm("server", "projectpath", ".", false, "workspace", "user", "password");
         assertThat( scm.processWorkspaceBeforeDeletion(project, workspace, inNode), is(true));
         verify(project).getLastBuild();
-        verify(node, times(2)).getNodeName();
-        verify(build, times(2)).getBuiltOn();
+        verify(build, times(2)).getBuiltOnStr();
         verify(build, times(2)).getPreviousBuild();
-
-        verifyNoMoreInteractions(project);
-        verifyNoMoreInteractions(node);
-        verifyNoMoreInteractions(build);        
+        verifyZeroInteractions(node);
     }
 }
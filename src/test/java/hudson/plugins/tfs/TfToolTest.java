@@ -10,15 +10,28 @@ import hudson.Launcher;
 import hudson.Proc;
 import hudson.model.TaskListener;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class TfToolTest {
     private FilePath workspace;
@@ -38,6 +51,7 @@ public class TfToolTest {
     @After
     public void teardown() throws Exception {
         workspace.deleteRecursive();
+        tool.getTemporaryFolder().deleteRecursive();
     }
 
     @Test(expected=AbortException.class)
@@ -45,7 +59,15 @@ public class TfToolTest {
         when(proc.join()).thenReturn(100);
         when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
 
-        tool.execute(new String[]{"history"});
+        IOUtils.toString(tool.execute(new String[]{"history"}));
+    }
+
+    @Test(expected=AbortException.class)
+    public void assertUnexpectReturnCodeThrowsAbortExceptionWhenClosed() throws Exception {
+        when(proc.join()).thenReturn(100);
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+
+        tool.execute(new String[]{"history"}).close();
     }
 
     @Test
@@ -53,7 +75,9 @@ public class TfToolTest {
         when(proc.join()).thenReturn(TfTool.SUCCESS_EXIT_CODE);
         when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
 
-        tool.execute(new String[]{"history"});
+        Reader reader = tool.execute(new String[]{"history"});
+        IOUtils.toString(reader);
+        reader.close();
     }
 
     @Test
@@ -61,7 +85,164 @@ public class TfToolTest {
         when(proc.join()).thenReturn(TfTool.PARTIAL_SUCCESS_EXIT_CODE);
         when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
 
-        tool.execute(new String[]{"history"});
+        Reader reader = tool.execute(new String[]{"history"});
+        IOUtils.toString(reader);
+        reader.close();
+    }
+
+    @Test
+    public void assertConsoleOutputIsStreamedToReader() throws Exception {
+        final CountDownLatch outputRead = new CountDownLatch(1);
+        when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenAnswer(new Answer<Proc>() {
+            public Proc answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream out = (OutputStream) invocation.getArguments()[4];
+                out.write("first line\n".getBytes());
+                out.flush();
+                return proc;
+            }
+        });
+        when(proc.join()).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                outputRead.await();
+                return TfTool.SUCCESS_EXIT_CODE;
+            }
+        });
+
+        BufferedReader reader = new BufferedReader(tool.execute(new String[]{"history"}));
+        assertEquals("The first line was incorrect", "first line", reader.readLine());
+        outputRead.countDown();
+        assertNull("The reader did not reach end of stream", reader.readLine());
+        reader.close();
+    }
+
+    @Test
+    public void assertOutputLargerThanBufferDoesNotBlockCommand() throws Exception {
+        final int lineCount = TfTool.OUTPUT_BUFFER_SIZE / 10;
+        when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        final OutputStream[] launchedOutputStream = new OutputStream[1];
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenAnswer(new Answer<Proc>() {
+            public Proc answer(InvocationOnMock invocation) throws Throwable {
+                launchedOutputStream[0] = (OutputStream) invocation.getArguments()[4];
+                return proc;
+            }
+        });
+        when(proc.join()).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream out = launchedOutputStream[0];
+                for (int i = 0; i < lineCount; i++) {
+                    out.write("123456789\n".getBytes());
+                }
+                return TfTool.SUCCESS_EXIT_CODE;
+            }
+        });
+
+        BufferedReader reader = new BufferedReader(tool.execute(new String[]{"history"}));
+        int readLines = 0;
+        while (reader.readLine() != null) {
+            readLines++;
+        }
+        reader.close();
+        assertEquals("The number of read lines was incorrect", lineCount, readLines);
+    }
+
+    @Test
+    public void assertAbortedReaderKillsCommandAndSkipsReturnCodeCheck() throws Exception {
+        when(proc.join()).thenReturn(100);
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+
+        ToolOutputReader reader = (ToolOutputReader) tool.execute(new String[]{"history"});
+        reader.abort();
+        reader.close();
+        verify(proc).kill();
+    }
+
+    @Test
+    public void assertInterruptedReaderKillsCommand() throws Exception {
+        final CountDownLatch killed = new CountDownLatch(1);
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+        when(proc.join()).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                killed.await();
+                return -1;
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                killed.countDown();
+                return null;
+            }
+        }).when(proc).kill();
+
+        final Reader reader = tool.execute(new String[]{"get"});
+        final Exception[] readException = new Exception[1];
+        Thread readerThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    reader.read();
+                } catch (Exception e) {
+                    readException[0] = e;
+                }
+            }
+        };
+        readerThread.start();
+        readerThread.interrupt();
+        readerThread.join(10000);
+
+        assertFalse("The reading thread was not stopped", readerThread.isAlive());
+        assertTrue("The read did not throw an interrupted exception", readException[0] instanceof InterruptedIOException);
+        verify(proc).kill();
+    }
+
+    @Test
+    public void assertClosingReaderBeforeEndOfOutputKillsCommand() throws Exception {
+        when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        final CountDownLatch killed = new CountDownLatch(1);
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenAnswer(new Answer<Proc>() {
+            public Proc answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream out = (OutputStream) invocation.getArguments()[4];
+                out.write("first line\n".getBytes());
+                return proc;
+            }
+        });
+        when(proc.join()).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                killed.await();
+                return -1;
+            }
+        });
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                killed.countDown();
+                return null;
+            }
+        }).when(proc).kill();
+
+        BufferedReader reader = new BufferedReader(tool.execute(new String[]{"get"}));
+        assertEquals("The first line was incorrect", "first line", reader.readLine());
+        try {
+            reader.close();
+            fail("The killed command did not result in an abort exception");
+        } catch (AbortException expected) {
+        }
+        verify(proc).kill();
+    }
+
+    @Test
+    public void assertWaitForReadsOutputBeforeClosing() throws Exception {
+        when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenAnswer(new Answer<Proc>() {
+            public Proc answer(InvocationOnMock invocation) throws Throwable {
+                OutputStream out = (OutputStream) invocation.getArguments()[4];
+                out.write("first line\n".getBytes());
+                return proc;
+            }
+        });
+        when(proc.join()).thenReturn(TfTool.SUCCESS_EXIT_CODE);
+
+        ToolOutputReader.waitFor(tool.execute(new String[]{"get"}));
+        verify(proc, never()).kill();
     }
 
     @Test
@@ -74,6 +255,24 @@ public class TfToolTest {
         verify(launcher).launch(aryEq(new String[]{"tf", "history"}), aryEq(new boolean[]{false, false}), (String[])anyObject(), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
     }
 
+    @Test
+    public void assertProxyIsSetInEnvironment() throws Exception {
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+        
+        new TfTool("tf", launcher, taskListener, workspace, "http://proxy:8081").execute(new String[]{"history"});
+        
+        verify(launcher).launch(isA(String[].class), isA(boolean[].class), aryEq(new String[]{"TFSPROXY=http://proxy:8081"}), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
+    }
+
+    @Test
+    public void assertNoProxyInEnvironmentByDefault() throws Exception {
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+        
+        tool.execute(new String[]{"history"});
+        
+        verify(launcher).launch(isA(String[].class), isA(boolean[].class), aryEq(new String[0]), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
+    }
+
     @Test
     public void assertMaskedCommands() throws Exception {
         when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
@@ -83,6 +282,58 @@ public class TfToolTest {
         verify(launcher).launch(aryEq(new String[]{"tf", "history"}), aryEq(new boolean[]{false, true}), (String[])anyObject(), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
     }
     
+    @Test
+    public void assertBatchIsExecutedWithCommandFile() throws Exception {
+        when(taskListener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        final String[] commandFile = new String[2];
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenAnswer(new Answer<Proc>() {
+            public Proc answer(InvocationOnMock invocation) throws Throwable {
+                commandFile[0] = ((String[]) invocation.getArguments()[0])[1].substring(1);
+                commandFile[1] = FileUtils.readFileToString(new File(commandFile[0]));
+                return proc;
+            }
+        });
+        List<String[]> commands = new ArrayList<String[]>();
+        commands.add(new String[]{"workfold", "-map", "$/project path", "."});
+        commands.add(new String[]{"workfold", "-login:user,password"});
+        List<boolean[]> masks = new ArrayList<boolean[]>();
+        masks.add(null);
+        masks.add(new boolean[]{false, true});
+
+        Reader reader = tool.executeBatch(commands, masks);
+        IOUtils.toString(reader);
+        reader.close();
+
+        verify(launcher).launch(isA(String[].class), aryEq(new boolean[]{false, false}), (String[])anyObject(), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
+        assertEquals("The command file content was incorrect", 
+                "workfold -map \"$/project path\" .\nworkfold -login:user,password\n", commandFile[1]);
+        assertEquals("The command file was not created in the temporary folder", 
+                new File(tool.getTemporaryFolder().getRemote()).getAbsoluteFile(), new File(commandFile[0]).getParentFile());
+        assertFalse("The command file was not removed", new File(commandFile[0]).exists());
+    }
+
+    @Test
+    public void assertBatchWithOneCommandIsNotExecutedWithCommandFile() throws Exception {
+        when(launcher.launch(isA(String[].class), isA(boolean[].class), isA(String[].class), (InputStream) isNull(), isA(OutputStream.class), isA(FilePath.class))).thenReturn(proc);
+        List<String[]> commands = new ArrayList<String[]>();
+        commands.add(new String[]{"history"});
+        List<boolean[]> masks = new ArrayList<boolean[]>();
+        masks.add(new boolean[]{true});
+
+        tool.executeBatch(commands, masks).close();
+
+        verify(launcher).launch(aryEq(new String[]{"tf", "history"}), aryEq(new boolean[]{false, true}), (String[])anyObject(), (InputStream)anyObject(), (OutputStream)anyObject(), (FilePath)anyObject());
+    }
+
+    @Test
+    public void assertQuoteCommandFileArgument() {
+        assertEquals("Argument without spaces should not be quoted", "-noprompt", TfTool.quoteCommandFileArgument("-noprompt"));
+        assertEquals("Argument with spaces was not quoted", "\"$/a path\"", TfTool.quoteCommandFileArgument("$/a path"));
+        assertEquals("Empty argument was not quoted", "\"\"", TfTool.quoteCommandFileArgument(""));
+        assertEquals("Quote in argument was not escaped", "\"-comment:a \\\"b\\\"\"", TfTool.quoteCommandFileArgument("-comment:a \"b\""));
+        assertEquals("Trailing backslash was not escaped", "\"C:\\a path\\\\\"", TfTool.quoteCommandFileArgument("C:\\a path\\"));
+    }
+
     @Test
     public void assertGetListenerReturnsSameListenerSuppliedInConstructor() {
         assertSame("The listener was not the same as supplied to the tool", taskListener, tool.getListener());
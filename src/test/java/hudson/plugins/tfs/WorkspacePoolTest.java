@@ -0,0 +1,95 @@
+package hudson.plugins.tfs;
+
+import static org.junit.Assert.*;
+
+import hudson.FilePath;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkspacePoolTest {
+
+    private FilePath nodeRoot;
+    private FilePath root;
+    private FilePath workspace;
+
+    @Before
+    public void setup() throws Exception {
+        nodeRoot = Util.createTempFilePath();
+        root = nodeRoot.child("workspace");
+        workspace = root.child("job");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        nodeRoot.deleteRecursive();
+    }
+
+    @Test
+    public void assertLeasedWorkspaceIsNotLeasedAgain() throws Exception {
+        WorkspacePool pool = new WorkspacePool();
+        WorkspacePool.Lease first = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        WorkspacePool.Lease second = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", root.child("otherjob"));
+        assertFalse("The leased workspace was leased again", first.getWorkspaceName().equals(second.getWorkspaceName()));
+        assertFalse("The leased folder was leased again", first.getFolder().getRemote().equals(second.getFolder().getRemote()));
+    }
+
+    @Test
+    public void assertReleasedWorkspaceIsLeasedAgain() throws Exception {
+        WorkspacePool pool = new WorkspacePool();
+        WorkspacePool.Lease first = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        pool.release(first);
+        WorkspacePool.Lease second = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", root.child("otherjob"));
+        assertEquals("The released workspace was not leased", first.getWorkspaceName(), second.getWorkspaceName());
+        assertEquals("The released folder was not leased", first.getFolder().getRemote(), second.getFolder().getRemote());
+    }
+
+    @Test
+    public void assertOtherMappingsUseOtherWorkspace() throws Exception {
+        WorkspacePool pool = new WorkspacePool();
+        WorkspacePool.Lease first = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        pool.release(first);
+        WorkspacePool.Lease second = pool.lease("node", nodeRoot, "server", "user", "$/otherproject", ".", workspace);
+        assertFalse("The workspace with other mappings was leased", first.getWorkspaceName().equals(second.getWorkspaceName()));
+    }
+
+    @Test
+    public void assertOtherUserUsesOtherWorkspace() throws Exception {
+        WorkspacePool pool = new WorkspacePool();
+        WorkspacePool.Lease first = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        pool.release(first);
+        WorkspacePool.Lease second = pool.lease("node", nodeRoot, "server", "otheruser", "$/project", ".", workspace);
+        assertFalse("The workspace of another user was leased", first.getWorkspaceName().equals(second.getWorkspaceName()));
+    }
+
+    @Test
+    public void assertPooledWorkspaceIsInNodeRoot() throws Exception {
+        WorkspacePool.Lease lease = new WorkspacePool().lease("", nodeRoot, "server", "user", "$/project", ".", workspace);
+        assertEquals("The pool folder was incorrect", nodeRoot.child(WorkspacePool.FOLDER_NAME).getRemote(), lease.getFolder().getParent().getRemote());
+        assertTrue("The workspace name did not contain the master name", lease.getWorkspaceName().startsWith(WorkspacePool.WORKSPACE_NAME_PREFIX + "master-"));
+        assertTrue("The workspace was not reported as pooled", WorkspacePool.isPooled(lease.getWorkspaceName()));
+        assertFalse("The job workspace was reported as pooled", WorkspacePool.isPooled("Hudson-job-node"));
+    }
+
+    @Test
+    public void assertPooledWorkspaceIsNextToHudsonWorkspaceWithoutNodeRoot() throws Exception {
+        WorkspacePool.Lease lease = new WorkspacePool().lease("", null, "server", "user", "$/project", ".", workspace);
+        assertEquals("The pool folder was incorrect", root.child(WorkspacePool.FOLDER_NAME).getRemote(), lease.getFolder().getParent().getRemote());
+    }
+
+    @Test
+    public void assertLeaseDoesNotCreateFolders() throws Exception {
+        WorkspacePool.Lease lease = new WorkspacePool().lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        assertFalse("The pool folder was created", lease.getFolder().getParent().exists());
+    }
+
+    @Test
+    public void assertMirrorManifestDependsOnHudsonWorkspace() throws Exception {
+        WorkspacePool pool = new WorkspacePool();
+        WorkspacePool.Lease first = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", workspace);
+        pool.release(first);
+        WorkspacePool.Lease second = pool.lease("node", nodeRoot, "server", "user", "$/project", ".", root.child("otherjob"));
+        assertFalse("The jobs had the same mirror manifest", first.getMirrorManifest().getRemote().equals(second.getMirrorManifest().getRemote()));
+    }
+}
@@ -5,12 +5,21 @@ import static org.junit.matchers.JUnitMatchers.*;
 import static org.mockito.Mockito.*;
 
 import java.io.FileFilter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import hudson.FilePath;
 import hudson.plugins.tfs.Util;
+import hudson.plugins.tfs.commands.ParseHandler;
 import hudson.plugins.tfs.model.ChangeSet;
 import hudson.plugins.tfs.model.Project;
 import hudson.plugins.tfs.model.Server;
@@ -22,8 +31,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.jvnet.hudson.test.Bug;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class CheckoutActionTest {
 
@@ -34,6 +46,7 @@ public class CheckoutActionTest {
     private @Mock Project project;
     private @Mock Project project2;
     private @Mock ChangeSet changeset;
+    private @Mock ParseHandler<ChangeSet> handler;
     
     @Before public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
@@ -51,14 +64,13 @@ public class CheckoutActionTest {
         when(server.getWorkspaces()).thenReturn(workspaces);
         when(server.getProject("project")).thenReturn(project);
         when(workspaces.exists("workspace")).thenReturn(true).thenReturn(false);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), false).checkout(server, hudsonWs,null);
         
-        verify(workspaces).newWorkspace("workspace");
-        verify(workspace).mapWorkfolder(project, ".");
-        verify(project).getFiles(".");
+        verify(workspaces).newWorkspace("workspace", Collections.singletonMap(project, "."));
+        verify(project).getFiles(".", 0);
         verify(workspaces).deleteWorkspace(workspace);
     }
 
@@ -68,15 +80,17 @@ public class CheckoutActionTest {
         when(server.getProject("$/path1")).thenReturn(project);
         when(server.getProject("$/path2")).thenReturn(project2);
         when(workspaces.exists(new Workspace(server, "workspace"))).thenReturn(false);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true).checkout(server, hudsonWs,null);
         
-        verify(workspaces).newWorkspace("workspace");
-        verify(workspace).mapWorkfolder(project, ".\\a");
-        verify(workspace).mapWorkfolder(project2, ".\\b");
-        verify(project).getFiles(".\\a");
-        verify(project2).getFiles(".\\b");
+        Map<Project, String> mappings = new HashMap<Project, String>();
+        mappings.put(project, ".\\a");
+        mappings.put(project2, ".\\b");
+        verify(workspaces).newWorkspace("workspace", mappings);
+        verify(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 0);
+        verify(project, never()).getFiles(".\\a", 0);
+        verify(project2, never()).getFiles(".\\b", 0);
         verify(workspaces, never()).deleteWorkspace(isA(Workspace.class));
     }
 
@@ -92,10 +106,9 @@ public class CheckoutActionTest {
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true).checkout(server, hudsonWs, null);
 
-        verify(project).getFiles(".\\a");
-        verify(project2).getFiles(".\\b");
-        verify(workspaces, never()).newWorkspace("workspace");
-        verify(workspace, never()).mapWorkfolder(isA(Project.class), isA(String.class));
+        verify(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 0);
+        verify(workspaces, never()).newWorkspace(eq("workspace"), isA(Map.class));
+        verify(workspace, never()).mapWorkfolders(isA(Map.class));
         verify(workspaces, never()).deleteWorkspace(isA(Workspace.class));
     }
 
@@ -104,14 +117,13 @@ public class CheckoutActionTest {
         when(server.getWorkspaces()).thenReturn(workspaces);
         when(server.getProject("project")).thenReturn(project);
         when(workspaces.exists("workspace")).thenReturn(true).thenReturn(false);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), false).checkout(server, hudsonWs,null);
 
-        verify(workspaces).newWorkspace("workspace");
-        verify(workspace).mapWorkfolder(project, ".");
-        verify(project).getFiles(".");
+        verify(workspaces).newWorkspace("workspace", Collections.singletonMap(project, "."));
+        verify(project).getFiles(".", 0);
         verify(workspaces).deleteWorkspace(workspace);
     }
    
@@ -149,6 +161,276 @@ public class CheckoutActionTest {
         verify(project).getDetailedHistory(eq(Util.getCalendar(2008, 9, 24)), isA(Calendar.class));
     }
     
+    @Test
+    public void assertDetailedHistoryIsRetrievedFromChangeSetNumberIfKnown() throws Exception {
+        List<ChangeSet> list = new ArrayList<ChangeSet>();
+        list.add(changeset);
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("project")).thenReturn(project);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        when(project.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(new HistoryAnswer(changeset));
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), true);
+        List<ChangeSet> actualList = action.checkout(server, hudsonWs, Util.getCalendar(2008, 9, 24), 12472);
+        assertEquals("The list from the detailed history should contain only the one returned changeset.", 1, actualList.size());
+        assertSame("The change set was incorrect", changeset, actualList.get(0));
+        verify(project, never()).getDetailedHistory(isA(Calendar.class), isA(Calendar.class));
+    }
+    
+    @Test
+    public void assertDetailedHistoryFromChangeSetNumberIsPassedToHandler() throws Exception {
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("project")).thenReturn(project);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), true);
+        assertEquals("The checked out change set number was incorrect", 12480, action.checkout(server, hudsonWs, Util.getCalendar(2008, 9, 24), 12472, handler));
+        
+        verify(project).getFiles(".", 12480);
+        verify(project).getDetailedHistory(12472, 12480, handler);
+        verify(project, never()).getDetailedHistory(isA(Calendar.class), isA(Calendar.class));
+    }
+    
+    @Test
+    public void assertFilesAndHistoryAreRetrievedAsOfLatestChangeSetBeforeTheGet() throws Exception {
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        when(project2.getLatestChangeSet()).thenReturn(new ChangeSet("12475", null, "user", "comment"));
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true);
+        assertEquals("The checked out change set number was incorrect", 12480, action.checkout(server, hudsonWs, null, 12472, handler));
+        
+        InOrder order = inOrder(project, workspace);
+        order.verify(project).getLatestChangeSet();
+        order.verify(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 12480);
+        verify(project).getDetailedHistory(12472, 12480, handler);
+        verify(project2).getDetailedHistory(12472, 12480, handler);
+    }
+    
+    @Test
+    public void assertHistoryIsNotRetrievedIfThereIsNoNewChangeSet() throws Exception {
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("project")).thenReturn(project);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12472", null, "user", "comment"));
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), true);
+        assertEquals("The checked out change set number was incorrect", 12472, action.checkout(server, hudsonWs, null, 12472, handler));
+        
+        verify(project).getFiles(".", 12472);
+        verify(project, never()).getDetailedHistory(anyInt(), anyInt(), isA(ParseHandler.class));
+    }
+    
+    @Test
+    public void assertDetailedHistoryFromTimestampIsPassedToHandler() throws Exception {
+        List<ChangeSet> list = new ArrayList<ChangeSet>();
+        list.add(changeset);
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("project")).thenReturn(project);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getDetailedHistory(isA(Calendar.class), isA(Calendar.class))).thenReturn(list);
+        when(handler.handle(changeset)).thenReturn(true);
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), true);
+        action.checkout(server, hudsonWs, Util.getCalendar(2008, 9, 24), null, handler);
+        
+        verify(handler).handle(changeset);
+        verify(project).getDetailedHistory(eq(Util.getCalendar(2008, 9, 24)), isA(Calendar.class));
+    }
+    
+    @Test
+    public void assertLatestChangeSetsAreRetrievedForAllProjects() throws Exception {
+        when(server.getProject("$/project")).thenReturn(project);
+        when(server.getProject("$/project2")).thenReturn(project2);
+        when(project.getLatestChangeSet()).thenReturn(changeset);
+        when(project2.getLatestChangeSet()).thenReturn(null);
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/project;$/project2", "."), true);
+        List<ChangeSet> latestChangeSets = action.getLatestChangeSets(server);
+        assertEquals("The number of latest change sets was incorrect", 1, latestChangeSets.size());
+        assertSame("The latest change set was incorrect", changeset, latestChangeSets.get(0));
+    }
+    
+    @Test
+    public void assertFilesAreRetrievedForEachProjectIfBatchedGetIsDisabled() throws Exception {
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        
+        System.setProperty(CheckoutAction.DISABLE_BATCHED_GET, "true");
+        try {
+            new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true).checkout(server, hudsonWs, null);
+        } finally {
+            System.getProperties().remove(CheckoutAction.DISABLE_BATCHED_GET);
+        }
+
+        verify(project).getFiles(".\\a", 0);
+        verify(project2).getFiles(".\\b", 0);
+        verify(workspace, never()).getFiles(isA(List.class), anyInt());
+    }
+    
+    @Test
+    public void assertParallelCheckoutGetsHistoryOfProjectsAtTheSameTime() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        when(server.getUrl()).thenReturn("http://parallel");
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        Answer<Boolean> waitForOtherProject = new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                bothStarted.countDown();
+                assertTrue("The history of the projects was not retrieved at the same time", bothStarted.await(10, TimeUnit.SECONDS));
+                return true;
+            }
+        };
+        when(project.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(waitForOtherProject);
+        when(project2.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(waitForOtherProject);
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true, 2);
+        action.checkout(server, hudsonWs, null, 12472, handler);
+        assertEquals("The history of all projects was not retrieved", 0, bothStarted.getCount());
+        verify(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 12480);
+    }
+    
+    @Test
+    public void assertParallelCheckoutGetsFilesWhileHistoryIsPassedToHandler() throws Exception {
+        final CountDownLatch getStarted = new CountDownLatch(1);
+        final CountDownLatch firstChangeSetHandled = new CountDownLatch(1);
+        when(server.getUrl()).thenReturn("http://parallel");
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        doAnswer(new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                getStarted.countDown();
+                assertTrue("The change set was not passed to the handler during the get", firstChangeSetHandled.await(10, TimeUnit.SECONDS));
+                return null;
+            }
+        }).when(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 12480);
+        when(project.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(new HistoryAnswer(changeset) {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                assertTrue("The files were not retrieved during the history", getStarted.await(10, TimeUnit.SECONDS));
+                return super.answer(invocation);
+            }
+        });
+        when(handler.handle(changeset)).thenAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                firstChangeSetHandled.countDown();
+                return true;
+            }
+        });
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true, 2);
+        action.checkout(server, hudsonWs, null, 12472, handler);
+        verify(handler).handle(changeset);
+    }
+    
+    @Test
+    public void assertParallelCheckoutGetsProjectsOneAtATime() throws Exception {
+        final AtomicInteger runningGets = new AtomicInteger();
+        Answer<Object> checkNoOtherGet = new Answer<Object>() {
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                assertEquals("Another get was running in the workspace", 1, runningGets.incrementAndGet());
+                Thread.sleep(50);
+                runningGets.decrementAndGet();
+                return null;
+            }
+        };
+        when(server.getUrl()).thenReturn("http://parallel");
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        doAnswer(checkNoOtherGet).when(project).getFiles(".\\a", 0);
+        doAnswer(checkNoOtherGet).when(project2).getFiles(".\\b", 0);
+        
+        System.setProperty(CheckoutAction.DISABLE_BATCHED_GET, "true");
+        try {
+            new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true, 2).checkout(server, hudsonWs, null);
+        } finally {
+            System.getProperties().remove(CheckoutAction.DISABLE_BATCHED_GET);
+        }
+        
+        verify(project).getFiles(".\\a", 0);
+        verify(project2).getFiles(".\\b", 0);
+    }
+    
+    @Test
+    public void assertParallelCheckoutPassesChangeSetsOfAllProjectsToHandler() throws Exception {
+        final List<ChangeSet> handled = new ArrayList<ChangeSet>();
+        final ChangeSet changeset2 = new ChangeSet("2", null, "user", "comment");
+        when(server.getUrl()).thenReturn("http://parallel");
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        when(project.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(new HistoryAnswer(changeset));
+        when(project2.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenAnswer(new HistoryAnswer(changeset2));
+        when(handler.handle(isA(ChangeSet.class))).thenAnswer(new Answer<Boolean>() {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                handled.add((ChangeSet) invocation.getArguments()[0]);
+                return true;
+            }
+        });
+        
+        CheckoutAction action = new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true, 2);
+        action.checkout(server, hudsonWs, null, 12472, handler);
+        
+        verify(workspace).getFiles(Arrays.asList(".\\a", ".\\b"), 12480);
+        assertEquals("The number of handled change sets was incorrect", 2, handled.size());
+        assertThat("The first project's change set was not handled", handled, hasItem(changeset));
+        assertThat("The second project's change set was not handled", handled, hasItem(changeset2));
+    }
+    
+    @Test(expected=IOException.class)
+    public void assertParallelCheckoutRethrowsProjectException() throws Exception {
+        when(server.getUrl()).thenReturn("http://parallel");
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(server.getProject("$/path1")).thenReturn(project);
+        when(server.getProject("$/path2")).thenReturn(project2);
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+        when(project.getLatestChangeSet()).thenReturn(new ChangeSet("12480", null, "user", "comment"));
+        when(project.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenReturn(true);
+        when(project2.getDetailedHistory(eq(12472), eq(12480), isA(ParseHandler.class))).thenThrow(new IOException("history failed"));
+        
+        new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "$/path1 : a ; $/path2 : b", "."), true, 2).checkout(server, hudsonWs, null, 12472);
+    }
+    
+    private static class HistoryAnswer implements Answer<Boolean> {
+        private final ChangeSet changeSet;
+        public HistoryAnswer(ChangeSet changeSet) {
+            this.changeSet = changeSet;
+        }
+        @SuppressWarnings("unchecked")
+        public Boolean answer(InvocationOnMock invocation) throws Throwable {
+            Object[] arguments = invocation.getArguments();
+            return ((ParseHandler<ChangeSet>) arguments[arguments.length - 1]).handle(changeSet);
+        }
+    }
+    
     @Test
     public void assertWorkFolderIsCleanedIfNotUsingUpdate() throws Exception {
         hudsonWs.createTempFile("temp", "txt");
@@ -159,7 +441,7 @@ public class CheckoutActionTest {
         when(server.getWorkspaces()).thenReturn(workspaces);
         when(server.getProject("project")).thenReturn(project);
         when(workspaces.exists(new Workspace(server, "workspace"))).thenReturn(false);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "tfs-ws"), false).checkout(server, hudsonWs, null);
         
@@ -194,7 +476,7 @@ public class CheckoutActionTest {
         when(workspaces.exists("workspace")).thenReturn(true).thenReturn(false);
         when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
         when(server.getProject("project")).thenReturn(project);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), false).checkout(server, hudsonWs, null);
         
@@ -202,7 +484,7 @@ public class CheckoutActionTest {
         verify(workspaces, times(2)).exists("workspace");
         verify(workspaces).getWorkspace("workspace");
         verify(workspaces).deleteWorkspace(workspace);
-        verify(workspaces).newWorkspace("workspace");
+        verify(workspaces).newWorkspace(eq("workspace"), isA(Map.class));
         verifyNoMoreInteractions(workspaces);
     }
     
@@ -227,14 +509,14 @@ public class CheckoutActionTest {
     public void assertCheckoutDoesNotDeleteWorkspaceIfNotUsingUpdateAndThereIsNoWorkspace() throws Exception {
         when(server.getWorkspaces()).thenReturn(workspaces);
         when(workspaces.exists("workspace")).thenReturn(false).thenReturn(false);
-        when(workspaces.newWorkspace("workspace")).thenReturn(workspace);
+        when(workspaces.newWorkspace(eq("workspace"), isA(Map.class))).thenReturn(workspace);
         when(server.getProject("project")).thenReturn(project);
         
         new CheckoutAction(new WorkspaceConfiguration("don't care", "workspace", "project", "."), false).checkout(server, hudsonWs, null);
         
         verify(server).getWorkspaces();
         verify(workspaces, times(2)).exists("workspace");
-        verify(workspaces).newWorkspace("workspace");
+        verify(workspaces).newWorkspace(eq("workspace"), isA(Map.class));
         verifyNoMoreInteractions(workspaces);
     }
 }
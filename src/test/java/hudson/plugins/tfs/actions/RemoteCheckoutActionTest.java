@@ -0,0 +1,43 @@
+package hudson.plugins.tfs.actions;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RemoteCheckoutActionTest {
+
+    private File compressedChangelogFile;
+    private File changelogFile;
+
+    @Before
+    public void setup() throws Exception {
+        compressedChangelogFile = File.createTempFile("changelog", ".xml.gz");
+        changelogFile = File.createTempFile("changelog", ".xml");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        compressedChangelogFile.delete();
+        changelogFile.delete();
+    }
+
+    @Test
+    public void assertChangeLogIsUncompressed() throws Exception {
+        OutputStream stream = RemoteCheckoutAction.createChangeLogStream(compressedChangelogFile);
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(stream), "UTF-8");
+        writer.write("<changelog></changelog>");
+        writer.close();
+
+        RemoteCheckoutAction.uncompressChangeLog(compressedChangelogFile, changelogFile);
+        assertEquals("The change log was incorrect", "<changelog></changelog>", FileUtils.readFileToString(changelogFile, "UTF-8"));
+    }
+}
@@ -0,0 +1,130 @@
+package hudson.plugins.tfs.actions;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import hudson.FilePath;
+import hudson.plugins.tfs.Util;
+import hudson.plugins.tfs.model.Project;
+import hudson.plugins.tfs.model.Server;
+import hudson.plugins.tfs.model.Workspace;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.plugins.tfs.model.WorkspaceMapping;
+import hudson.plugins.tfs.model.Workspaces;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class UpdateWorkspaceMappingsActionTest {
+
+    private FilePath hudsonWs;
+    private @Mock Server server;
+    private @Mock Workspaces workspaces;
+    private @Mock Workspace workspace;
+    private @Mock Project project2;
+
+    @Before public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        hudsonWs = Util.createTempFilePath();
+        when(server.getWorkspaces()).thenReturn(workspaces);
+        when(workspaces.getWorkspace("workspace")).thenReturn(workspace);
+    }
+
+    @After public void teardown() throws Exception {
+        if (hudsonWs != null) {
+            hudsonWs.deleteRecursive();
+        }
+    }
+
+    @Test
+    public void assertMissingWorkspaceIsNotUpdated() throws Exception {
+        when(workspaces.exists("workspace")).thenReturn(false);
+        
+        UpdateWorkspaceMappingsAction action = new UpdateWorkspaceMappingsAction(new WorkspaceConfiguration("server", "workspace", "$/path1", "."));
+        assertFalse("The missing workspace was reported as updated", action.update(server, hudsonWs));
+        verify(workspace, never()).getMappings();
+    }
+
+    @Test
+    public void assertUnchangedMappingsAreNotUpdated() throws Exception {
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspace.getMappings()).thenReturn(Collections.singletonList(new WorkspaceMapping("$/Path1", hudsonWs.child("a").getRemote())));
+        
+        UpdateWorkspaceMappingsAction action = new UpdateWorkspaceMappingsAction(new WorkspaceConfiguration("server", "workspace", "$/path1 : a", "."));
+        assertTrue("The workspace was not reported as updated", action.update(server, hudsonWs));
+        verify(workspace, never()).updateWorkfolders(isA(List.class), isA(Map.class));
+    }
+
+    @Test
+    public void assertOnlyNewMappingIsMapped() throws Exception {
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspace.getMappings()).thenReturn(Collections.singletonList(new WorkspaceMapping("$/path1", hudsonWs.child("a").getRemote())));
+        when(server.getProject("$/path2")).thenReturn(project2);
+        FilePath folder = hudsonWs.child("a");
+        folder.mkdirs();
+        folder.createTempFile("temp", "txt");
+        
+        UpdateWorkspaceMappingsAction action = new UpdateWorkspaceMappingsAction(new WorkspaceConfiguration("server", "workspace", "$/path1 : a ; $/path2 : b", "."));
+        assertTrue("The workspace was not reported as updated", action.update(server, hudsonWs));
+        verify(workspace).updateWorkfolders(new ArrayList<String>(), Collections.singletonMap(project2, ".\\b"));
+        assertEquals("The files in the still mapped folder were removed", 1, folder.list((FileFilter)null).size());
+    }
+
+    @Test
+    public void assertRemovedMappingIsUnmappedAndItsFilesRemoved() throws Exception {
+        List<WorkspaceMapping> mappings = new ArrayList<WorkspaceMapping>();
+        mappings.add(new WorkspaceMapping("$/path1", hudsonWs.child("a").getRemote()));
+        mappings.add(new WorkspaceMapping("$/path2", hudsonWs.child("b").getRemote()));
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspace.getMappings()).thenReturn(mappings);
+        FilePath keptFolder = hudsonWs.child("a");
+        keptFolder.mkdirs();
+        keptFolder.createTempFile("temp", "txt");
+        FilePath removedFolder = hudsonWs.child("b");
+        removedFolder.mkdirs();
+        removedFolder.createTempFile("temp", "txt");
+        
+        UpdateWorkspaceMappingsAction action = new UpdateWorkspaceMappingsAction(new WorkspaceConfiguration("server", "workspace", "$/path1 : a", "."));
+        assertTrue("The workspace was not reported as updated", action.update(server, hudsonWs));
+        verify(workspace).updateWorkfolders(Collections.singletonList(hudsonWs.child("b").getRemote()), Collections.<Project, String>emptyMap());
+        assertEquals("The files in the still mapped folder were removed", 1, keptFolder.list((FileFilter)null).size());
+        assertEquals("The files in the unmapped folder were not removed", 0, removedFolder.list((FileFilter)null).size());
+    }
+
+    @Test
+    public void assertUnmappedFolderContainingMappedFolderIsNotCleaned() throws Exception {
+        when(workspaces.exists("workspace")).thenReturn(true);
+        when(workspace.getMappings()).thenReturn(Collections.singletonList(new WorkspaceMapping("$/path1", hudsonWs.getRemote())));
+        when(server.getProject("$/path2")).thenReturn(project2);
+        FilePath folder = hudsonWs.child("a");
+        folder.mkdirs();
+        folder.createTempFile("temp", "txt");
+        
+        UpdateWorkspaceMappingsAction action = new UpdateWorkspaceMappingsAction(new WorkspaceConfiguration("server", "workspace", "$/path2 : a", "."));
+        assertTrue("The workspace was not reported as updated", action.update(server, hudsonWs));
+        verify(workspace).updateWorkfolders(Collections.singletonList(hudsonWs.getRemote()), Collections.singletonMap(project2, ".\\a"));
+        assertEquals("The files in the folder containing a mapped folder were removed", 1, folder.list((FileFilter)null).size());
+    }
+
+    @Test
+    public void assertNormalizePath() {
+        assertEquals("Relative segments were not removed", "c:/ws/a", UpdateWorkspaceMappingsAction.normalizePath("C:\\ws\\.\\b\\..\\a\\"));
+        assertEquals("Unix root was not kept", "/ws/a", UpdateWorkspaceMappingsAction.normalizePath("/ws//a"));
+        assertEquals("Server path was incorrect", "$/project", UpdateWorkspaceMappingsAction.normalizePath("$/Project/"));
+    }
+
+    @Test
+    public void assertResolvePath() {
+        assertEquals("Relative folder was not resolved", "c:/ws/a", UpdateWorkspaceMappingsAction.resolvePath("c:/ws", ".\\a"));
+        assertEquals("Absolute folder was resolved", "d:/build", UpdateWorkspaceMappingsAction.resolvePath("c:/ws", "D:\\build"));
+    }
+}
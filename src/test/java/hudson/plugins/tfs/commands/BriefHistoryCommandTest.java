@@ -33,6 +33,33 @@ public class BriefHistoryCommandTest extends SwedishLocaleTestCase {
         assertEquals("history $/tfsandbox -noprompt -version:D2006-12-01T01:01:01Z~D2008-06-27T20:00:00Z -recursive -format:brief -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
     }
 
+    @Test
+    public void assertChangeSetRangeArguments() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        when(config.getUserName()).thenReturn("snd\\user_cp");
+        when(config.getUserPassword()).thenReturn("password");
+        
+        MaskedArgumentListBuilder arguments = new BriefHistoryCommand(config, "$/tfsandbox", 12472).getArguments();
+        assertEquals("history $/tfsandbox -noprompt -version:C12472~T -recursive -format:brief -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
+    }
+
+    @Test
+    public void assertChangeSetRangeSkipsAlreadySeenChangeSet() throws Exception {
+        StringReader reader = new StringReader(
+                "Changeset User           Date                 Comment\n" +
+                "--------- -------------- -------------------- ----------------------------------------------------------------------------\n" +
+                "\n" +
+                "12495     SND\\redsolo_cp 2008-jun-27 13:21:25 changed and created one\n" +
+                "12493     SND\\redsolo_cp 2008-jun-27 13:19:41 changed and created one\n" +
+                "12492     SND\\redsolo_cp 2001-jun-27 13:11:15 first file\n");
+        
+        BriefHistoryCommand command = new BriefHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", 12492);
+        List<ChangeSet> list = command.parse(reader);
+        assertEquals("Number of change sets was incorrect", 2, list.size());
+        assertEquals("Version was incorrect", "12493", list.get(1).getVersion());
+    }
+
     @Test
     public void assertNoChangesWithEmptyOutput() throws Exception {
         BriefHistoryCommand command = new BriefHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Calendar.getInstance(), null);
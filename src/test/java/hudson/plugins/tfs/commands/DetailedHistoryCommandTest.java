@@ -14,11 +14,13 @@ import hudson.plugins.tfs.SwedishLocaleTestCase;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.After;
 import org.junit.Test;
 import org.jvnet.hudson.test.Bug;
@@ -27,6 +29,7 @@ public class DetailedHistoryCommandTest extends SwedishLocaleTestCase {
 
     @After public void tearDown() {
         System.getProperties().remove(DetailedHistoryCommand.IGNORE_DATE_CHECK_ON_CHANGE_SET);        
+        System.getProperties().remove(DetailedHistoryCommand.DISABLE_SORTING_IN_TOOL);        
     }
     
     @Test
@@ -44,6 +47,149 @@ public class DetailedHistoryCommandTest extends SwedishLocaleTestCase {
         assertEquals("history $/tfsandbox -noprompt -version:D2006-12-01T01:01:01Z~D2008-06-27T20:00:00Z -recursive -format:detailed -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
     }
     
+    @Test
+    public void assertChangeSetRangeArguments() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        when(config.getUserName()).thenReturn("snd\\user_cp");
+        when(config.getUserPassword()).thenReturn("password");
+        
+        MaskedArgumentListBuilder arguments = new DetailedHistoryCommand(config, "$/tfsandbox", 12472).getArguments();
+        assertEquals("history $/tfsandbox -noprompt -version:C12472~T -recursive -format:detailed -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
+    }
+    
+    @Test
+    public void assertChangeSetRangeSkipsAlreadySeenChangeSetAndIgnoresDates() throws Exception {
+        StringReader reader = new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12473\n" +
+                "User:      SND\\redsolo_cp\n" +
+                "Date:      2001-jun-27 13:11:15\n" +
+                "\n" +
+                "Comment:\n" +
+                "  first file\n" +
+                "\n" +
+                "Items:\n" +
+                "  edit $/tfsandbox/file.txt\n" +
+                "\n" +
+                "-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n" +
+                "Created team project folder $/tfsandbox via the Team Project Creation Wizard\n" +
+                "\n" +
+                "Items:\n" +
+                "  add $/tfsandbox\n\n");
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", 12472);
+        List<ChangeSet> list = command.parse(reader);
+        assertEquals("Number of change sets was incorrect", 1, list.size());
+        assertEquals("The version was incorrect", "12473", list.get(0).getVersion());
+    }
+    
+    @Test
+    public void assertOldestFirstChangeSetRangeArguments() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        
+        MaskedArgumentListBuilder arguments = new DetailedHistoryCommand(config, "$/tfsandbox", 12472, true).getArguments();
+        assertEquals("history $/tfsandbox -noprompt -version:C12472~T -recursive -format:detailed -sort:ascending -server:https//tfs02.codeplex.com", arguments.toStringWithQuote());
+    }
+    
+    @Test
+    public void assertChangeSetRangeEndingOnChangeSetArguments() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        
+        MaskedArgumentListBuilder arguments = new DetailedHistoryCommand(config, "$/tfsandbox", 12472, 12480, true).getArguments();
+        assertEquals("history $/tfsandbox -noprompt -version:C12473~C12480 -recursive -format:detailed -sort:ascending -server:https//tfs02.codeplex.com", arguments.toStringWithQuote());
+    }
+    
+    @Test
+    public void assertOldestFirstOutputIsNotReversed() throws Exception {
+        StringReader reader = new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12473\n" +
+                "User:      SND\\redsolo_cp\n" +
+                "Date:      2008-jun-27 13:11:15\n" +
+                "\n" +
+                "Comment:\n" +
+                "  first file\n" +
+                "\n" +
+                "Items:\n" +
+                "  edit $/tfsandbox/file.txt\n" +
+                "\n" +
+                "-----------------------------------\n" +
+                "Changeset: 12474\n" +
+                "User:      SND\\redsolo_cp\n" +
+                "Date:      2008-jun-27 13:12:15\n" +
+                "\n" +
+                "Comment:\n" +
+                "  second file\n" +
+                "\n" +
+                "Items:\n" +
+                "  add $/tfsandbox/second.txt\n\n");
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", 12472, true);
+        List<ChangeSet> list = command.parse(reader);
+        assertEquals("Number of change sets was incorrect", 2, list.size());
+        assertEquals("The first version was incorrect", "12473", list.get(0).getVersion());
+        assertEquals("The second version was incorrect", "12474", list.get(1).getVersion());
+    }
+    
+    @Test
+    public void assertOldestFirstIsSortedInMemoryIfSystemPropertyIsSet() throws Exception {
+        System.setProperty(DetailedHistoryCommand.DISABLE_SORTING_IN_TOOL, "true");
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        DetailedHistoryCommand command = new DetailedHistoryCommand(config, "$/tfsandbox", 12000, true);
+        assertEquals("history $/tfsandbox -noprompt -version:C12000~T -recursive -format:detailed -server:https//tfs02.codeplex.com", command.getArguments().toStringWithQuote());
+        
+        InputStreamReader reader = new InputStreamReader(DetailedHistoryCommandTest.class.getResourceAsStream("tf-changeset-2.txt"));
+        final List<ChangeSet> list = new ArrayList<ChangeSet>();
+        command.parse(reader, new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                list.add(changeSet);
+                return true;
+            }
+        });
+        assertEquals("The number of handled change sets was incorrect", 2, list.size());
+        assertEquals("The first handled version was incorrect", "12472", list.get(0).getVersion());
+        assertEquals("The second handled version was incorrect", "12492", list.get(1).getVersion());
+    }
+    
+    @Test
+    public void assertHandlerReceivesChangeSetsInOutputOrder() throws Exception {
+        InputStreamReader reader = new InputStreamReader(DetailedHistoryCommandTest.class.getResourceAsStream("tf-changeset-2.txt"));
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        final List<ChangeSet> list = new ArrayList<ChangeSet>();
+        boolean completed = command.parse(reader, new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                list.add(changeSet);
+                return true;
+            }
+        });
+        assertTrue("The parsing was not completed", completed);
+        assertEquals("The number of handled change sets was incorrect", 2, list.size());
+        assertEquals("The first handled version was incorrect", "12492", list.get(0).getVersion());
+        assertEquals("The second handled version was incorrect", "12472", list.get(1).getVersion());
+    }
+    
+    @Test
+    public void assertHandlerCanStopParsing() throws Exception {
+        InputStreamReader reader = new InputStreamReader(DetailedHistoryCommandTest.class.getResourceAsStream("tf-changeset-2.txt"));
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        final List<ChangeSet> list = new ArrayList<ChangeSet>();
+        boolean completed = command.parse(reader, new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                list.add(changeSet);
+                return false;
+            }
+        });
+        assertFalse("The parsing was not stopped by the handler", completed);
+        assertEquals("The number of handled change sets was incorrect", 1, list.size());
+    }
+    
     @Test
     public void assertParsingOfEmptyReader() throws Exception {
         DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
@@ -206,6 +352,81 @@ public class DetailedHistoryCommandTest extends SwedishLocaleTestCase {
         assertEquals("Number of change sets was incorrect", 1, list.size());
     }
     
+    @Test
+    public void assertMultiLineCommentsAreParsed() throws Exception {
+        StringReader reader = new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n" +
+                "  First line\n" +
+                "\n" +
+                "  Note:\n" +
+                "    indented line\n" +
+                "\n" +
+                "Items:\n" +
+                "  merge, delete $/tfsandbox/file.txt;X4019\n" +
+                "\n" +
+                "Check-in Notes:\n" +
+                "  Code Reviewer:\n" +
+                "\n");
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        List<ChangeSet> list = command.parse(reader);
+        assertEquals("Number of change sets was incorrect", 1, list.size());
+        assertEquals("The comment was incorrect", "First line\n\nNote:\n  indented line", list.get(0).getComment());
+        assertEquals("Number of items was incorrect", 1, list.get(0).getItems().size());
+        assertEquals("The item action was incorrect", "merge, delete", list.get(0).getItems().get(0).getAction());
+        assertEquals("The item path was incorrect", "$/tfsandbox/file.txt;X4019", list.get(0).getItems().get(0).getPath());
+    }
+
+    @Test
+    public void assertHistoryLogWithoutEmptyLastLineIsParsed() throws Exception {
+        InputStreamReader reader = new InputStreamReader(DetailedHistoryCommandTest.class.getResourceAsStream("/tf-history.log"));
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        List<ChangeSet> list = command.parse(reader);
+        assertEquals("Number of change sets was incorrect", 4, list.size());
+        assertEquals("The version was incorrect", "12495", list.get(3).getVersion());
+        assertEquals("Number of items was incorrect", 2, list.get(3).getItems().size());
+    }
+
+    /**
+     * The comment could make the old regex based parser backtrack for each line in the comment
+     * that looked like a section header, and parsing a change set like this took minutes.
+     */
+    @Test(timeout=10000)
+    public void assertLongCommentWithSectionLikeLinesIsParsedInLinearTime() throws Exception {
+        StringBuilder builder = new StringBuilder("-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n");
+        for (int i = 0; i < 50000; i++) {
+            builder.append("  Line").append(i).append(":\n\n");
+        }
+        builder.append("Items:\n  add $/tfsandbox\n");
+        
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        List<ChangeSet> list = command.parse(new StringReader(builder.toString()));
+        assertEquals("Number of change sets was incorrect", 1, list.size());
+        assertTrue("The comment was incorrect", list.get(0).getComment().endsWith("Line49999:"));
+        assertEquals("Number of items was incorrect", 1, list.get(0).getItems().size());
+    }
+
+    @Test(timeout=20000)
+    public void assertManyChangeSetsAreParsedQuickly() throws Exception {
+        String historyLog = IOUtils.toString(DetailedHistoryCommandTest.class.getResourceAsStream("/tf-history.log"));
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append(historyLog).append("\n");
+        }
+        DetailedHistoryCommand command = new DetailedHistoryCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox", Util.getCalendar(2008, 01, 15), Calendar.getInstance());
+        List<ChangeSet> list = command.parse(new StringReader(builder.toString()));
+        assertEquals("Number of change sets was incorrect", 20000, list.size());
+    }
+    
     /**
      * Asserts that the TF date output can be parsed correctly.
      * It seems that the "p.m." could not be parsed properly, and would yield incorrect values. 
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
 
 import hudson.plugins.tfs.commands.GetFilesToWorkFolderCommand;
@@ -25,6 +26,25 @@ public class GetFilesToWorkFolderCommandTest {
         assertEquals("get localPath -recursive -noprompt -login:snd\\user_cp,password", arguments.toStringWithQuote());
     }
 
+    @Test
+    public void assertArgumentsWithSeveralWorkFolders() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUserName()).thenReturn("snd\\user_cp");
+        when(config.getUserPassword()).thenReturn("password");
+        
+        MaskedArgumentListBuilder arguments = new GetFilesToWorkFolderCommand(config, Arrays.asList("path1", "path2"), false).getArguments();
+        assertNotNull("Arguments were null", arguments);
+        assertEquals("get path1 path2 -recursive -noprompt -login:snd\\user_cp,password", arguments.toStringWithQuote());
+    }
+
+    @Test
+    public void assertVersionArgument() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        
+        MaskedArgumentListBuilder arguments = new GetFilesToWorkFolderCommand(config, "localPath", 12480).getArguments();
+        assertEquals("get localPath -recursive -version:C12480 -noprompt", arguments.toStringWithQuote());
+    }
+
     @Test
     public void assertPreviewArgument() {
         ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
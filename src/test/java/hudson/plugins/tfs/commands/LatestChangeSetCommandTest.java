@@ -0,0 +1,52 @@
+package hudson.plugins.tfs.commands;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import hudson.plugins.tfs.SwedishLocaleTestCase;
+import hudson.plugins.tfs.model.ChangeSet;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class LatestChangeSetCommandTest extends SwedishLocaleTestCase {
+
+    @Test
+    public void assertArguments() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        when(config.getUserName()).thenReturn("snd\\user_cp");
+        when(config.getUserPassword()).thenReturn("password");
+        
+        MaskedArgumentListBuilder arguments = new LatestChangeSetCommand(config, "$/tfsandbox").getArguments();
+        assertNotNull("Arguments were null", arguments);
+        assertEquals("history $/tfsandbox -noprompt -version:T -recursive -format:brief -stopafter:1 -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
+    }
+
+    @Test
+    public void assertNoChangeSetWithEmptyToolOutput() throws Exception {
+        LatestChangeSetCommand command = new LatestChangeSetCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox");
+        ChangeSet changeSet = command.parse(new StringReader("No history entries were found for the item and version combination specified.\n\n"));
+        assertNull("A change set was returned", changeSet);
+    }
+
+    @Test
+    public void assertOnlyFirstChangeSetIsRead() throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(
+                "Changeset User           Date                 Comment\n" +
+                "--------- -------------- -------------------- ----------------------------------------------------------------------------\n" +
+                "\n" +
+                "12495     SND\\redsolo_cp 2008-jun-27 13:21:25 changed and created one\n" +
+                "12493     SND\\redsolo_cp 2008-jun-27 13:19:41 changed and created one\n"));
+        
+        LatestChangeSetCommand command = new LatestChangeSetCommand(mock(ServerConfigurationProvider.class), "$/tfsandbox");
+        ChangeSet changeSet = command.parse(reader);
+        assertEquals("Version was incorrect", "12495", changeSet.getVersion());
+        assertEquals("User was incorrect", "redsolo_cp", changeSet.getUser());
+        assertEquals("Comment was incorrect", "changed and created one", changeSet.getComment());
+        assertTrue("The rest of the output was read", reader.ready());
+    }
+}
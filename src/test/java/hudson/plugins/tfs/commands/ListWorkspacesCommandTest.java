@@ -42,6 +42,22 @@ public class ListWorkspacesCommandTest {
         assertEquals("workspaces -format:brief -computer:akira -server:https//tfs02.codeplex.com -login:snd\\user_cp,password", arguments.toStringWithQuote());
     }
 
+    @Test
+    public void assertArgumentsWithWorkspaceNameOnAllComputers() {
+        ServerConfigurationProvider config = mock(ServerConfigurationProvider.class);
+        when(config.getUrl()).thenReturn("https//tfs02.codeplex.com");
+        
+        MaskedArgumentListBuilder arguments = new ListWorkspacesCommand(null, config, ListWorkspacesCommand.ALL_COMPUTERS, "name1").getArguments();
+        assertEquals("workspaces -format:brief -computer:* name1 -server:https//tfs02.codeplex.com", arguments.toStringWithQuote());
+    }
+
+    @Test
+    public void assertEmptyListWhenNoWorkspaceMatchesName() throws Exception {
+        ListWorkspacesCommand command = new ListWorkspacesCommand(null, mock(ServerConfigurationProvider.class), ListWorkspacesCommand.ALL_COMPUTERS, "job-ws");
+        List<Workspace> list = command.parse(new StringReader("No workspace matching job-ws on computer * found in Team Foundation Server https://tfs02.codeplex.com/.\n"));
+        assertEquals("Number of workspaces was incorrect", 0, list.size());
+    }
+
     @Test
     public void assertEmptyListWithEmptyOutput() throws Exception {
         ListWorkspacesCommand command = new ListWorkspacesCommand(null, mock(ServerConfigurationProvider.class));
@@ -32,6 +32,17 @@ public class ChangeSetTest {
         assertEquals("The first path is incorrect", "filename2", iterator.next());
     }
     
+    @Test
+    public void assertUnloadedItemsAreCreatedWhenRetrieved() {
+        ChangeSet changeset = new ChangeSet("0", null, "snd\\user", "comment");
+        changeset.setUnloadedItems(new String[]{"add", "filename", "edit", "filename2"});
+        assertEquals("The number of items was incorrect", 2, changeset.getItems().size());
+        Item item = changeset.getItems().get(1);
+        assertEquals("The item path was incorrect", "filename2", item.getPath());
+        assertEquals("The item action was incorrect", "edit", item.getAction());
+        assertSame("The item's parent is not the change set", changeset, item.getParent());
+    }
+    
     @Test
     public void assertAddedItemReturnsAddEditType() {
         Item item = new Item("path", "add");
@@ -0,0 +1,40 @@
+package hudson.plugins.tfs.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChangeSetWatermarkTest {
+
+    @Test
+    public void assertHighestChangeSetNumberIsUsed() {
+        List<ChangeSet> list = new ArrayList<ChangeSet>();
+        list.add(new ChangeSet("99", new Date(), "user", "comment"));
+        list.add(new ChangeSet("1024", new Date(), "user", "comment"));
+        list.add(new ChangeSet("1000", new Date(), "user", "comment"));
+        ChangeSetWatermark watermark = ChangeSetWatermark.create(new ChangeSetWatermark(100), list);
+        assertEquals("The change set number was incorrect", 1024, watermark.getChangeSetNumber());
+    }
+
+    @Test
+    public void assertPreviousWatermarkIsKeptWithoutChangeSets() {
+        ChangeSetWatermark watermark = ChangeSetWatermark.create(new ChangeSetWatermark(100), new ArrayList<ChangeSet>());
+        assertEquals("The change set number was incorrect", 100, watermark.getChangeSetNumber());
+    }
+
+    @Test
+    public void assertHighestOfPreviousAndChangeSetNumberIsUsed() {
+        assertEquals("The change set number was incorrect", 1024, ChangeSetWatermark.create(new ChangeSetWatermark(100), 1024).getChangeSetNumber());
+        assertEquals("The change set number was incorrect", 100, ChangeSetWatermark.create(new ChangeSetWatermark(100), 0).getChangeSetNumber());
+        assertNull("A watermark was created", ChangeSetWatermark.create(null, 0));
+    }
+
+    @Test
+    public void assertNoWatermarkIsCreatedWithoutPreviousOrChangeSets() {
+        assertNull("A watermark was created", ChangeSetWatermark.create(null, new ArrayList<ChangeSet>()));
+    }
+}
@@ -6,10 +6,13 @@ import static org.mockito.Mockito.*;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
 
+import hudson.AbortException;
 import hudson.plugins.tfs.SwedishLocaleTestCase;
 import hudson.plugins.tfs.Util;
+import hudson.plugins.tfs.commands.ParseHandler;
 import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 import org.junit.Test;
@@ -72,6 +75,141 @@ public class ProjectTest extends SwedishLocaleTestCase {
         verify(spy).close();
     }
     
+    @Test
+    public void assertGetDetailedHistoryFromChangeSetNumber() throws Exception {
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n" +
+                "Created team project folder $/tfsandbox via the Team Project Creation Wizard\n" +
+                "\n" +
+                "Items:\n" +
+                "  add $/tfsandbox\n\n"));
+        Project project = new Project(server, "$/serverpath");
+        List<ChangeSet> list = project.getDetailedHistory(12000);
+        assertEquals("The number of change sets in list was incorrect", 1, list.size());
+        verify(server).execute(isA(MaskedArgumentListBuilder.class));
+    }
+
+    @Test
+    public void assertGetDetailedHistoryFromChangeSetNumberWithHandler() throws Exception {
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n" +
+                "Created team project folder $/tfsandbox via the Team Project Creation Wizard\n" +
+                "\n" +
+                "Items:\n" +
+                "  add $/tfsandbox\n\n"));
+        final List<ChangeSet> list = new ArrayList<ChangeSet>();
+        boolean completed = new Project(server, "$/serverpath").getDetailedHistory(12000, new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                list.add(changeSet);
+                return true;
+            }
+        });
+        assertTrue("The history was not completed", completed);
+        assertEquals("The number of handled change sets was incorrect", 1, list.size());
+    }
+
+    @Test
+    public void assertGetDetailedHistoryWithStoppingHandlerClosesReader() throws Exception {
+        Reader spy = spy(new StringReader(
+                "-----------------------------------\n" +
+                "Changeset: 12472\n" +
+                "User:      RNO\\_MCLWEB\n" +
+                "Date:      2008-jun-27 11:16:06\n" +
+                "\n" +
+                "Comment:\n" +
+                "Created team project folder $/tfsandbox via the Team Project Creation Wizard\n" +
+                "\n" +
+                "Items:\n" +
+                "  add $/tfsandbox\n\n"));
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(spy);
+        boolean completed = new Project(server, "$/serverpath").getDetailedHistory(Util.getCalendar(2008, 06, 01), Util.getCalendar(2008, 07, 01), new ParseHandler<ChangeSet>() {
+            public boolean handle(ChangeSet changeSet) {
+                return false;
+            }
+        });
+        assertFalse("The history was not stopped by the handler", completed);
+        verify(spy).close();
+    }
+
+    @Test
+    public void assertGetBriefHistoryFromChangeSetNumberClosesReader() throws Exception {
+        Reader spy = spy(new StringReader(""));
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(spy);
+        new Project(server, "$/serverpath").getBriefHistory(12000);
+
+        verify(spy).close();
+    }
+    
+    @Test(expected=AbortException.class)
+    public void assertGetBriefHistoryFailsIfCommandFailed() throws Exception {
+        Reader spy = spy(new StringReader(""));
+        doThrow(new AbortException()).when(spy).close();
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(spy);
+        new Project(server, "$/serverpath").getBriefHistory(12000);
+    }
+
+    @Test(expected=AbortException.class)
+    public void assertGetDetailedHistoryFailsIfCommandFailed() throws Exception {
+        Reader spy = spy(new StringReader(""));
+        doThrow(new AbortException()).when(spy).close();
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(spy);
+        new Project(server, "$/serverpath").getDetailedHistory(Util.getCalendar(2008, 06, 01), Util.getCalendar(2008, 07, 01));
+    }
+
+    @Test
+    public void assertGetLatestChangeSet() throws Exception {
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(
+                "Changeset User           Date                 Comment\n" +
+                "--------- -------------- -------------------- ----------------------------------------------------------------------------\n" +
+                "\n" +
+                "12495     SND\\redsolo_cp 2008-jun-27 13:21:25 changed and created one\n"));
+        ChangeSet changeSet = new Project(server, "$/serverpath").getLatestChangeSet();
+        assertEquals("The latest change set was incorrect", "12495", changeSet.getVersion());
+        verify(server).execute(isA(MaskedArgumentListBuilder.class));
+    }
+
+    @Test
+    public void assertCachedLatestChangeSetIsUsed() throws Exception {
+        Server server = mock(Server.class);
+        ServerSession session = new ServerSession(60000, 60000);
+        when(server.getSession()).thenReturn(session);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(
+                "Changeset User           Date                 Comment\n" +
+                "--------- -------------- -------------------- ----------------------------------------------------------------------------\n" +
+                "\n" +
+                "12495     SND\\redsolo_cp 2008-jun-27 13:21:25 changed and created one\n"));
+        assertEquals("The latest change set was incorrect", "12495", new Project(server, "$/serverpath").getLatestChangeSet().getVersion());
+        assertEquals("The cached change set was incorrect", "12495", new Project(server, "$/serverpath").getCachedLatestChangeSet().getVersion());
+        verify(server, times(1)).execute(isA(MaskedArgumentListBuilder.class));
+    }
+
+    @Test
+    public void assertGetLatestChangeSetClosesReader() throws Exception {
+        Reader spy = spy(new StringReader(""));
+        Server server = mock(Server.class);
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(spy);
+        assertNull("A change set was returned", new Project(server, "$/serverpath").getLatestChangeSet());
+
+        verify(spy).close();
+    }
+    
     @Test
     public void assertGetFiles() throws Exception {
         Server server = mock(Server.class);
@@ -0,0 +1,44 @@
+package hudson.plugins.tfs.model;
+
+import static org.junit.Assert.*;
+
+import hudson.FilePath;
+
+import java.io.File;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class ServerSessionTest {
+
+    @Test
+    public void assertSessionIsSharedForSameServerAndUser() {
+        assertSame("The session was not shared", ServerSession.getSession("http://server", "user"), ServerSession.getSession("http://server", "user"));
+        assertNotSame("The session was shared with another user", ServerSession.getSession("http://server", "user"), ServerSession.getSession("http://server", "other"));
+        assertNotSame("The session was shared with another server", ServerSession.getSession("http://server", "user"), ServerSession.getSession("http://other", "user"));
+    }
+
+    @Test
+    public void assertLatestChangeSetIsCached() {
+        ServerSession session = new ServerSession(60000, 60000);
+        ChangeSet changeSet = new ChangeSet("12", new Date(), "user", "comment");
+        session.putLatestChangeSet("$/Project", changeSet);
+        assertSame("The cached change set was incorrect", changeSet, session.getLatestChangeSet("$/project"));
+        assertNull("The change set was returned for another path", session.getLatestChangeSet("$/other"));
+    }
+
+    @Test
+    public void assertLatestChangeSetIsNotCachedWithoutTimeToLive() {
+        ServerSession session = new ServerSession(60000, 0);
+        session.putLatestChangeSet("$/project", new ChangeSet("12", new Date(), "user", "comment"));
+        assertNull("The change set was cached", session.getLatestChangeSet("$/project"));
+    }
+
+    @Test
+    public void assertHostnameIsCachedForNode() {
+        ServerSession session = new ServerSession(60000, 60000);
+        assertNull("The host name was cached", session.getHostname(new FilePath(new File("workspace"))));
+        session.putHostname(new FilePath(new File("workspace")), "thehostname");
+        assertEquals("The host name of the node was incorrect", "thehostname", session.getHostname(new FilePath(new File("other"))));
+    }
+}
@@ -3,12 +3,22 @@ package hudson.plugins.tfs.model;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import hudson.FilePath;
 import hudson.plugins.tfs.TfTool;
+import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class ServerTest {
 
@@ -41,6 +51,32 @@ public class ServerTest {
                 server.getProject("$/projectPath"), server.getProject("$/otherPath"));
     }
     
+    @Test
+    public void assertExecuteWithSeveralCommandsUsesBatchInTfTool() throws Exception {
+        MaskedArgumentListBuilder first = new MaskedArgumentListBuilder();
+        first.add("workfold");
+        MaskedArgumentListBuilder second = new MaskedArgumentListBuilder();
+        second.add("workfold");
+        second.addMasked("secret");
+        List<MaskedArgumentListBuilder> commands = new ArrayList<MaskedArgumentListBuilder>();
+        commands.add(first);
+        commands.add(second);
+        
+        final List<?>[] masks = new List<?>[1];
+        when(tool.executeBatch(isA(List.class), isA(List.class))).thenAnswer(new Answer<Reader>() {
+            public Reader answer(InvocationOnMock invocation) throws Throwable {
+                masks[0] = (List<?>) invocation.getArguments()[1];
+                return new StringReader("");
+            }
+        });
+        Server server = new Server(tool, "url", null, null);
+        server.execute(commands);
+        
+        verify(tool).executeBatch(isA(List.class), isA(List.class));
+        assertTrue("The masked argument was not passed to the tool", ((boolean[]) masks[0].get(1))[1]);
+        verify(tool, never()).execute(isA(String[].class), isA(boolean[].class));
+    }
+    
     @Test
     public void assertLocalHostnameIsRetrievedFromTfTool() throws Exception {
         when(tool.getHostname()).thenReturn("thehostname");
@@ -48,4 +84,13 @@ public class ServerTest {
         assertEquals("Hostname was incorrect", "thehostname", server.getLocalHostname());
         verify(tool).getHostname();
     }
+    
+    @Test
+    public void assertLocalHostnameIsSharedBetweenServers() throws Exception {
+        when(tool.getHostname()).thenReturn("thehostname");
+        when(tool.getWorkspace()).thenReturn(new FilePath(new File("workspace")));
+        assertEquals("Hostname was incorrect", "thehostname", new Server(tool, "http://hostnameserver", null, null).getLocalHostname());
+        assertEquals("Hostname was incorrect", "thehostname", new Server(tool, "http://hostnameserver", null, null).getLocalHostname());
+        verify(tool, times(1)).getHostname();
+    }
 }
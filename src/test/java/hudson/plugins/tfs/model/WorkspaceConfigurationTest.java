@@ -22,6 +22,16 @@ public class WorkspaceConfigurationTest {
         assertThat(one, not(new WorkspaceConfiguration("server", "workspace", "project", "aworkfolder")));
     }
 
+    @Test public void assertSameWorkspaceIgnoresMappings() {
+        WorkspaceConfiguration one = new WorkspaceConfiguration("server", "workspace", "project", "workfolder");
+        assertTrue("Configurations with other mappings should use the same workspace", 
+                one.isSameWorkspace(new WorkspaceConfiguration("server", "workspace", "aproject", "aworkfolder")));
+        assertFalse("Configurations with another server should not use the same workspace", 
+                one.isSameWorkspace(new WorkspaceConfiguration("aserver", "workspace", "project", "workfolder")));
+        assertFalse("Configurations with another workspace name should not use the same workspace", 
+                one.isSameWorkspace(new WorkspaceConfiguration("server", "aworkspace", "project", "workfolder")));
+    }
+
     @Test public void assertAssumesRootMapping() {
         WorkspaceConfiguration configuration = new WorkspaceConfiguration("server", "workspace", "$/path1", "workfolder");
         Entry<String, String> mapping = (Entry<String, String>) configuration.getProjectMappings().toArray()[0];
@@ -0,0 +1,50 @@
+package hudson.plugins.tfs.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WorkspaceListCacheTest {
+
+    private List<Workspace> createList() {
+        List<Workspace> list = new ArrayList<Workspace>();
+        list.add(new Workspace(null, "name1"));
+        return list;
+    }
+
+    @Test
+    public void assertCachedListIsReturned() {
+        WorkspaceListCache cache = new WorkspaceListCache(60000);
+        cache.put("key", createList());
+        assertNotNull("The cached list was not returned", cache.get("key"));
+        assertEquals("The cached list was incorrect", "name1", cache.get("key").get(0).getName());
+        assertNull("The list for another key was returned", cache.get("otherkey"));
+    }
+
+    @Test
+    public void assertInvalidatedListIsNotReturned() {
+        WorkspaceListCache cache = new WorkspaceListCache(60000);
+        cache.put("key", createList());
+        cache.invalidate("key");
+        assertNull("The invalidated list was returned", cache.get("key"));
+    }
+
+    @Test
+    public void assertListIsNotCachedWithoutTimeToLive() {
+        WorkspaceListCache cache = new WorkspaceListCache(0);
+        cache.put("key", createList());
+        assertNull("The list was cached", cache.get("key"));
+    }
+
+    @Test
+    public void assertKeyDependsOnComputer() {
+        Server server = new Server("url");
+        assertEquals("The key was not case insensitive for the computer", 
+                WorkspaceListCache.getKey(server, "Computer"), WorkspaceListCache.getKey(server, "COMPUTER"));
+        assertFalse("The key did not depend on the computer", 
+                WorkspaceListCache.getKey(server, "computer").equals(WorkspaceListCache.getKey(server, "other")));
+    }
+}
@@ -7,6 +7,11 @@ import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -39,6 +44,46 @@ public class WorkspaceTest {
         verify(spy).close();
     }
     
+    @Test
+    public void assertMapWorkfoldersIsExecutedAsOneBatch() throws Exception {
+        when(server.execute(isA(List.class))).thenReturn(new StringReader(""));
+        Map<Project, String> mappings = new LinkedHashMap<Project, String>();
+        mappings.put(new Project(server, "$/serverpath"), "a");
+        mappings.put(new Project(server, "$/otherpath"), "b");
+        new Workspace(server, "name").mapWorkfolders(mappings);
+        verify(server).execute(isA(List.class));
+        verify(server, never()).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertMapWorkfoldersClosesReader() throws Exception {
+        Reader spy = spy(new StringReader(""));
+        when(server.execute(isA(List.class))).thenReturn(spy);
+        new Workspace(server, "name").mapWorkfolders(Collections.singletonMap(new Project(server, "$/serverpath"), "."));
+        verify(spy).close();
+    }
+    
+    @Test
+    public void assertGetFilesOfSeveralWorkFoldersIsExecutedOnce() throws Exception {
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(""));
+        new Workspace(server, "name").getFiles(Arrays.asList("a", "b"));
+        verify(server).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertUpdateWorkfoldersIsExecutedInOneBatch() throws Exception {
+        when(server.execute(isA(List.class))).thenReturn(new StringReader(""));
+        new Workspace(server, "name").updateWorkfolders(Arrays.asList("oldfolder"), Collections.singletonMap(new Project(server, "$/serverpath"), "."));
+        verify(server).execute(isA(List.class));
+        verify(server, never()).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertUpdateWorkfoldersWithoutChangesDoesNothing() throws Exception {
+        new Workspace(server, "name").updateWorkfolders(Collections.<String>emptyList(), Collections.<Project, String>emptyMap());
+        verifyNoMoreInteractions(server);
+    }
+    
     @Test
     public void assertUnmapWorkfolderIsExecuted() throws Exception {
         when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(""));        
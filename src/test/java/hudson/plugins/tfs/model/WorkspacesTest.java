@@ -2,6 +2,8 @@ package hudson.plugins.tfs.model;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
 
 import hudson.plugins.tfs.commands.ListWorkspacesCommand;
 import hudson.plugins.tfs.util.MaskedArgumentListBuilder;
@@ -14,6 +16,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class WorkspacesTest {
 
@@ -104,6 +108,17 @@ public class WorkspacesTest {
         verify(server, times(1)).execute(isA(MaskedArgumentListBuilder.class));
     }
 
+    @Test
+    public void assertNewWorkspaceWithMappingsIsCreatedInOneBatch() throws Exception {
+        when(server.execute(isA(List.class))).thenReturn(new StringReader(""));
+        
+        Workspaces workspaces = new Workspaces(server);
+        Workspace workspace = workspaces.newWorkspace("name1", Collections.singletonMap(new Project(server, "$/serverpath"), "."));
+        assertTrue("The get new workspace did not exists", workspaces.exists(workspace));
+        verify(server, times(1)).execute(isA(List.class));
+        verify(server, never()).execute(isA(MaskedArgumentListBuilder.class));
+    }
+
     @Test
     public void assertWorkspaceIsDeletedFromMap() throws Exception {
         when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(""));        
@@ -130,6 +145,105 @@ public class WorkspacesTest {
         assertFalse("The unknown workspace was reported as existing", workspaces.exists(new Workspace(server, "name1")));
     }
     
+    @Test
+    public void assertListFromServerIsFilteredByLocalComputer() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        final String[] arguments = new String[1];
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenAnswer(new Answer<Reader>() {
+            public Reader answer(InvocationOnMock invocation) throws Throwable {
+                if (arguments[0] == null) {
+                    arguments[0] = ((MaskedArgumentListBuilder) invocation.getArguments()[0]).toStringWithQuote();
+                }
+                return new StringReader("");
+            }
+        });
+        
+        new Workspaces(server).exists("name1");
+        assertTrue("The workspaces were not filtered by computer", arguments[0].contains("-computer:LocalComputer"));
+    }
+    
+    @Test
+    public void assertWorkspaceOnOtherComputerIsFound() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenAnswer(new Answer<Reader>() {
+            public Reader answer(InvocationOnMock invocation) throws Throwable {
+                if (!((MaskedArgumentListBuilder) invocation.getArguments()[0]).toStringWithQuote().contains("-computer:* name1")) {
+                    return new StringReader("");
+                }
+                return new StringReader(
+                        "--------- -------------- -------- ----------------------------------------------------------------------------------------------------------\n" +
+                        "\n" +
+                        "name1     SND\\redsolo_cp OTHERCOMPUTER\n");
+            }
+        });
+        
+        Workspaces workspaces = new Workspaces(server);
+        assertTrue("The workspace on the other computer was reported as non existant", workspaces.exists("name1"));
+        assertNotNull("The workspace on the other computer was null", workspaces.getWorkspace("name1"));
+        verify(server, times(2)).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertDeletedWorkspaceIsNotLookedUpOnOtherComputers() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenAnswer(new Answer<Reader>() {
+            public Reader answer(InvocationOnMock invocation) throws Throwable {
+                return new StringReader(
+                        "--------- -------------- -------- ----------------------------------------------------------------------------------------------------------\n" +
+                        "\n" +
+                        "name1     SND\\redsolo_cp LOCALCOMPUTER\n");
+            }
+        });
+        
+        Workspaces workspaces = new Workspaces(server);
+        workspaces.deleteWorkspace(workspaces.getWorkspace("name1"));
+        assertFalse("The deleted workspace was reported as existant", workspaces.exists("name1"));
+        // The list of the local computer and the delete command
+        verify(server, times(2)).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertCachedListIsSharedBetweenServers() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenReturn(new StringReader(
+                "--------- -------------- -------- ----------------------------------------------------------------------------------------------------------\n" +
+                "\n" +
+                "name1     SND\\redsolo_cp COMPUTER\n"));
+        WorkspaceListCache cache = new WorkspaceListCache(60000);
+        
+        assertTrue("The workspace was reported as non existant", new Workspaces(server, cache).exists("name1"));
+        assertTrue("The cached workspace was reported as non existant", new Workspaces(server, cache).exists("name1"));
+        verify(server, times(1)).execute(isA(MaskedArgumentListBuilder.class));
+    }
+    
+    @Test
+    public void assertNewWorkspaceInvalidatesCachedList() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenAnswer(new EmptyOutputAnswer());
+        WorkspaceListCache cache = new WorkspaceListCache(60000);
+        
+        assertFalse("The workspace was reported as existant", new Workspaces(server, cache).exists("name1"));
+        new Workspaces(server, cache).newWorkspace("name1");
+        assertNull("The cached list was not invalidated", cache.get(WorkspaceListCache.getKey(server, "LocalComputer")));
+    }
+    
+    @Test
+    public void assertDeleteWorkspaceInvalidatesCachedList() throws Exception {
+        when(server.getLocalHostname()).thenReturn("LocalComputer");
+        when(server.execute(isA(MaskedArgumentListBuilder.class))).thenAnswer(new EmptyOutputAnswer());
+        WorkspaceListCache cache = new WorkspaceListCache(60000);
+        
+        assertFalse("The workspace was reported as existant", new Workspaces(server, cache).exists("name1"));
+        new Workspaces(server, cache).deleteWorkspace(new Workspace(server, "name1"));
+        assertNull("The cached list was not invalidated", cache.get(WorkspaceListCache.getKey(server, "LocalComputer")));
+    }
+    
+    private static class EmptyOutputAnswer implements Answer<Reader> {
+        public Reader answer(InvocationOnMock invocation) throws Throwable {
+            return new StringReader("");
+        }
+    }
+    
     @Test
     public void assertWorkspaceFactory() {        
         ListWorkspacesCommand.WorkspaceFactory factory = new Workspaces(server);
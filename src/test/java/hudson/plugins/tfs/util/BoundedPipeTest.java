@@ -0,0 +1,83 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class BoundedPipeTest {
+
+    @Test
+    public void assertWrittenDataCanBeRead() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(16);
+        pipe.getOutputStream().write("data".getBytes());
+        pipe.closeWriter();
+        assertEquals("The read data was incorrect", "data", IOUtils.toString(pipe.getInputStream()));
+    }
+
+    @Test
+    public void assertReaderGetsEndOfStreamWhenWriterIsClosed() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(16);
+        pipe.closeWriter();
+        assertEquals("The reader did not get end of stream", -1, pipe.getInputStream().read());
+    }
+
+    @Test(timeout=10000)
+    public void assertDataLargerThanBufferIsPassedThrough() throws Exception {
+        final BoundedPipe pipe = new BoundedPipe(7);
+        final byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    OutputStream out = pipe.getOutputStream();
+                    out.write(data, 0, 5000);
+                    for (int i = 5000; i < data.length; i++) {
+                        out.write(data[i]);
+                    }
+                } catch (IOException e) {
+                    fail("Could not write to pipe");
+                } finally {
+                    pipe.closeWriter();
+                }
+            }
+        };
+        writer.start();
+        byte[] read = IOUtils.toByteArray(pipe.getInputStream());
+        writer.join();
+        assertArrayEquals("The read data was incorrect", data, read);
+    }
+
+    @Test(timeout=10000)
+    public void assertWriterDoesNotBlockWhenReaderIsClosed() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(4);
+        pipe.getOutputStream().write("1234".getBytes());
+        pipe.getInputStream().close();
+        pipe.getOutputStream().write("56789".getBytes());
+        pipe.closeWriter();
+    }
+
+    @Test
+    public void assertAvailableReturnsBufferedBytes() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(16);
+        InputStream in = pipe.getInputStream();
+        pipe.getOutputStream().write("abc".getBytes());
+        assertEquals("The number of available bytes was incorrect", 3, in.available());
+        in.read();
+        assertEquals("The number of available bytes was incorrect", 2, in.available());
+    }
+
+    @Test(expected=IOException.class)
+    public void assertWritingToClosedWriterThrowsException() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(16);
+        pipe.closeWriter();
+        pipe.getOutputStream().write(1);
+    }
+}
@@ -64,6 +64,49 @@ public class BuildVariableResolverTest {
         verifyZeroInteractions(project);
     }
     
+    @Test public void assertComputerEnvVarsAreRetrievedOnce() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("ENV_VAR", "This is an env var");
+        
+        Computer computer = mock(Computer.class);
+        when(launcher.getComputer()).thenReturn(computer);
+        when(computer.getEnvVars()).thenReturn(map);
+
+        BuildVariableResolver resolver = new BuildVariableResolver(project, launcher, new BuildVariableResolver.ComputerValuesCache(60000));
+        assertEquals("Variable resolution was incorrect", "This is an env var", resolver.resolve("ENV_VAR"));
+        assertEquals("Variable resolution was incorrect", "This is an env var", resolver.resolve("ENV_VAR"));
+        assertNull("Variable resolution was incorrect", resolver.resolve("OTHER_VAR"));
+        verify(computer, times(1)).getEnvVars();
+    }
+    
+    @Test public void assertComputerEnvVarsAreSharedBetweenResolvers() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("ENV_VAR", "This is an env var");
+        
+        Computer computer = mock(Computer.class);
+        when(launcher.getComputer()).thenReturn(computer);
+        when(computer.getEnvVars()).thenReturn(map);
+
+        BuildVariableResolver.ComputerValuesCache cache = new BuildVariableResolver.ComputerValuesCache(60000);
+        assertEquals("Variable resolution was incorrect", "This is an env var", new BuildVariableResolver(project, launcher, cache).resolve("ENV_VAR"));
+        assertEquals("Variable resolution was incorrect", "This is an env var", new BuildVariableResolver(project, launcher, cache).resolve("ENV_VAR"));
+        verify(computer, times(1)).getEnvVars();
+    }
+    
+    @Test public void assertExpiredComputerEnvVarsAreRetrievedAgain() throws Exception {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put("ENV_VAR", "This is an env var");
+        
+        Computer computer = mock(Computer.class);
+        when(launcher.getComputer()).thenReturn(computer);
+        when(computer.getEnvVars()).thenReturn(map);
+
+        BuildVariableResolver.ComputerValuesCache cache = new BuildVariableResolver.ComputerValuesCache(0);
+        new BuildVariableResolver(project, launcher, cache).resolve("ENV_VAR");
+        new BuildVariableResolver(project, launcher, cache).resolve("ENV_VAR");
+        verify(computer, times(2)).getEnvVars();
+    }
+    
     @Test public void assertComputerUserNameIsResolved() throws Exception {
         Map<Object, Object> map = new HashMap<Object, Object>();
         map.put("user.name", "Other_user");
@@ -0,0 +1,71 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+
+import hudson.plugins.tfs.Util;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class DateUtilTest {
+
+    @Test
+    public void assertSwedishDateIsParsed() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("Europe/Stockholm");
+        Date date = DateUtil.parseDate("2008-jun-27 11:16:06", new Locale("sv", "SE"), timezone);
+        assertEquals("The date was incorrect", Util.getCalendar(2008, 6, 27, 11, 16, 6, timezone).getTime(), date);
+    }
+
+    @Test
+    public void assertSameFormatIsParsedCorrectlyTwice() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("Europe/Stockholm");
+        DateUtil.parseDate("2008-jun-10 09:01:02", new Locale("sv", "SE"), timezone);
+        Date date = DateUtil.parseDate("2008-jun-27 13:19:41", new Locale("sv", "SE"), timezone);
+        assertEquals("The second date was incorrect", Util.getCalendar(2008, 6, 27, 13, 19, 41, timezone).getTime(), date);
+    }
+
+    @Test
+    public void assertTimeIsNotIgnoredAfterParsingDateWithoutTime() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("Europe/Stockholm");
+        DateUtil.parseDate("2008-jun-10", new Locale("sv", "SE"), timezone);
+        Date date = DateUtil.parseDate("2008-jun-27 13:19:41", new Locale("sv", "SE"), timezone);
+        assertEquals("The date with time was incorrect", Util.getCalendar(2008, 6, 27, 13, 19, 41, timezone).getTime(), date);
+    }
+
+    @Test
+    public void assertDateWithDottedPmIsParsed() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("Pacific/Auckland");
+        Date date = DateUtil.parseDate("Monday, 10 August 2009 5:17:36 p.m.", new Locale("en", "nz"), timezone);
+        assertEquals("The date was incorrect", DateUtil.parseDate("Monday, 10 August 2009 5:17:36 PM", new Locale("en", "nz"), timezone), date);
+    }
+
+    @Test
+    public void assertAmbiguousDateDoesNotDependOnPreviouslyParsedDates() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("UTC");
+        Locale locale = new Locale("en", "GB");
+        Date expectedDate = Util.getCalendar(2010, 3, 4, 10, 0, 0, timezone).getTime();
+        assertEquals("The ambiguous date was incorrect", expectedDate, DateUtil.parseDate("03/04/2010, 10:00:00 UTC", locale, timezone));
+        // A date that can only be parsed with the formats of the locale
+        DateUtil.parseDate(DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.FULL, locale).format(expectedDate), locale, timezone);
+        assertEquals("The ambiguous date depended on the previously parsed dates", expectedDate, DateUtil.parseDate("03/04/2010, 10:00:00 UTC", locale, timezone));
+    }
+
+    @Test
+    public void assertDateParseIsOnlyUsedForDatesItKnows() throws Exception {
+        assertTrue("The US date was not passed to Date.parse", DateUtil.isDateParseInput("Monday, August 10, 2009 5:17:36 PM"));
+        assertTrue("The UK date was not passed to Date.parse", DateUtil.isDateParseInput("03/04/2010, 10:00:00 UTC"));
+        assertFalse("The German date was passed to Date.parse", DateUtil.isDateParseInput("Montag, 10. August 2009 17:17"));
+        assertFalse("The Swedish date was passed to Date.parse", DateUtil.isDateParseInput("den 10 augusti 2009"));
+        assertFalse("The dotted date was passed to Date.parse", DateUtil.isDateParseInput("10.08.2009 17:17"));
+    }
+
+    @Test(expected=ParseException.class)
+    public void assertParseExceptionForInvalidDate() throws Exception {
+        DateUtil.parseDate("this is no date", new Locale("sv", "SE"), TimeZone.getTimeZone("Europe/Stockholm"));
+    }
+}
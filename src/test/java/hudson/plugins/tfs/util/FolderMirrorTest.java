@@ -0,0 +1,82 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+
+import hudson.FilePath;
+import hudson.plugins.tfs.Util;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FolderMirrorTest {
+
+    private FilePath root;
+    private FilePath source;
+    private FilePath target;
+    private FolderMirror mirror;
+
+    @Before
+    public void setup() throws Exception {
+        root = Util.createTempFilePath();
+        source = root.child("source");
+        source.mkdirs();
+        target = root.child("target");
+        target.mkdirs();
+        mirror = new FolderMirror(source, root.child("manifest.txt"));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        root.deleteRecursive();
+    }
+
+    private File file(FilePath folder, String path) {
+        return new File(folder.getRemote(), path);
+    }
+
+    @Test
+    public void assertNewFilesAreCopied() throws Exception {
+        FileUtils.writeStringToFile(file(source, "a.txt"), "a");
+        FileUtils.writeStringToFile(file(source, "folder/b.txt"), "b");
+        
+        assertEquals("The number of copied files was incorrect", 2, mirror.mirror(target));
+        assertEquals("The file was not copied", "a", FileUtils.readFileToString(file(target, "a.txt")));
+        assertEquals("The file in the sub folder was not copied", "b", FileUtils.readFileToString(file(target, "folder/b.txt")));
+    }
+
+    @Test
+    public void assertUnchangedFilesAreNotCopied() throws Exception {
+        FileUtils.writeStringToFile(file(source, "a.txt"), "a");
+        mirror.mirror(target);
+        
+        assertEquals("The unchanged file was copied", 0, mirror.mirror(target));
+    }
+
+    @Test
+    public void assertChangedFilesAreCopied() throws Exception {
+        FileUtils.writeStringToFile(file(source, "a.txt"), "a");
+        mirror.mirror(target);
+        FileUtils.writeStringToFile(file(source, "a.txt"), "changed");
+        
+        assertEquals("The changed file was not copied", 1, mirror.mirror(target));
+        assertEquals("The file was not updated", "changed", FileUtils.readFileToString(file(target, "a.txt")));
+    }
+
+    @Test
+    public void assertRemovedFilesAreRemovedAndOtherFilesAreKept() throws Exception {
+        FileUtils.writeStringToFile(file(source, "a.txt"), "a");
+        FileUtils.writeStringToFile(file(source, "b.txt"), "b");
+        FileUtils.writeStringToFile(file(target, "result.txt"), "result");
+        mirror.mirror(target);
+        file(source, "b.txt").delete();
+        
+        mirror.mirror(target);
+        assertTrue("The file that still exists was removed", file(target, "a.txt").exists());
+        assertFalse("The removed file was not removed", file(target, "b.txt").exists());
+        assertTrue("The file that was not copied was removed", file(target, "result.txt").exists());
+    }
+}
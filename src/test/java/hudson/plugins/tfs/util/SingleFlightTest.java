@@ -0,0 +1,195 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+    /**
+     * Thread that executes a command that blocks until it is released
+     */
+    private static class BlockingExecution extends Thread {
+        private final SingleFlight singleFlight;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final Object result;
+
+        public BlockingExecution(SingleFlight singleFlight, Object result) {
+            this.singleFlight = singleFlight;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            try {
+                singleFlight.execute("key", new Callable<Object>() {
+                    public Object call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        if (result instanceof Exception) {
+                            throw (Exception) result;
+                        }
+                        return result;
+                    }
+                });
+            } catch (Exception e) {
+                // The result is asserted by the thread that shares the execution
+            }
+        }
+
+        public void startAndReleaseLater() throws InterruptedException {
+            start();
+            started.await();
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                        // Release directly
+                    }
+                    release.countDown();
+                }
+            }.start();
+        }
+    }
+
+    private static Callable<Object> returning(final Object result) {
+        return new Callable<Object>() {
+            public Object call() {
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void assertIdenticalCommandSharesExecution() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingExecution execution = new BlockingExecution(singleFlight, "shared");
+        execution.startAndReleaseLater();
+
+        assertEquals("The result was not shared", "shared", singleFlight.execute("key", returning("own")));
+        execution.join();
+    }
+
+    @Test
+    public void assertCompletedCommandIsExecutedAgain() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        assertEquals("The result was incorrect", "first", singleFlight.execute("key", returning("first")));
+        assertEquals("The result of the completed command was reused", "second", singleFlight.execute("key", returning("second")));
+    }
+
+    @Test
+    public void assertOtherCommandIsNotShared() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingExecution execution = new BlockingExecution(singleFlight, "shared");
+        execution.startAndReleaseLater();
+
+        assertEquals("The result of another command was shared", "own", singleFlight.execute("otherkey", returning("own")));
+        execution.join();
+    }
+
+    @Test(expected=IOException.class)
+    public void assertExceptionIsSharedWithWaitingThread() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingExecution execution = new BlockingExecution(singleFlight, new IOException("failed"));
+        execution.startAndReleaseLater();
+
+        singleFlight.execute("key", returning("own"));
+    }
+
+    @Test
+    public void assertFailureIsLoggedToWaitingThread() throws Exception {
+        SingleFlight singleFlight = new SingleFlight();
+        BlockingExecution execution = new BlockingExecution(singleFlight, new IOException("tf failed"));
+        execution.startAndReleaseLater();
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try {
+            singleFlight.execute("key", returning("own"), createListener(log));
+            fail("The exception was not shared");
+        } catch (IOException expected) {
+        }
+        assertTrue("The failure was not logged to the waiting thread", log.toString().contains("tf failed"));
+    }
+
+    @Test
+    public void assertWaitingThreadExecutesCommandWhenOwnerIsInterrupted() throws Exception {
+        final SingleFlight singleFlight = new SingleFlight();
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread owner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    singleFlight.execute("key", new Callable<Object>() {
+                        public Object call() throws Exception {
+                            started.countDown();
+                            try {
+                                new CountDownLatch(1).await();
+                            } catch (InterruptedException e) {
+                                // The tool output reader fails like this when the build is aborted
+                                throw new InterruptedIOException("Interrupted while waiting on pipe");
+                            }
+                            return "shared";
+                        }
+                    });
+                } catch (Exception e) {
+                    // The owner was interrupted
+                }
+            }
+        };
+        owner.start();
+        started.await();
+
+        final Object[] result = new Object[1];
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        final TaskListener listener = createListener(log);
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = singleFlight.execute("key", returning("own"), listener);
+                } catch (Exception e) {
+                    result[0] = e;
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(300);
+        owner.interrupt();
+        waiter.join(10000);
+        owner.join(10000);
+
+        assertEquals("The waiting thread did not execute the command itself", "own", result[0]);
+        assertTrue("The waiting thread did not wait for the owner", log.toString().contains("Waiting for an identical TFS command"));
+    }
+
+    private static TaskListener createListener(ByteArrayOutputStream log) {
+        TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(log, true));
+        return listener;
+    }
+
+    @Test
+    public void assertKeyDependsOnMaskedArguments() {
+        MaskedArgumentListBuilder arguments = new MaskedArgumentListBuilder();
+        arguments.add("history");
+        arguments.addMasked("-login:user,password");
+        MaskedArgumentListBuilder otherArguments = new MaskedArgumentListBuilder();
+        otherArguments.add("history");
+        otherArguments.addMasked("-login:user,otherpassword");
+        assertFalse("The key did not depend on the credentials", SingleFlight.getKey(arguments).equals(SingleFlight.getKey(otherArguments)));
+        assertFalse("The key contained the password", SingleFlight.getKey(arguments).contains("password"));
+    }
+}
@@ -0,0 +1,79 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+
+import java.io.FileFilter;
+
+import hudson.FilePath;
+import hudson.plugins.tfs.Util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrashFolderTest {
+
+    private FilePath root;
+    private FilePath workspace;
+
+    @Before
+    public void setup() throws Exception {
+        root = Util.createTempFilePath();
+        workspace = root.child("workspace");
+        workspace.mkdirs();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        root.deleteRecursive();
+    }
+
+    @Test
+    public void assertTrashFolderIsNextToWorkspace() {
+        assertEquals("The trash folder was incorrect", root.child(TrashFolder.NAME).getRemote(), 
+                TrashFolder.forWorkspace(workspace).getPath().getRemote());
+    }
+
+    @Test(timeout=10000)
+    public void assertContentsAreMovedAndDeletedInBackground() throws Exception {
+        FilePath folder = workspace.child("folder");
+        folder.mkdirs();
+        folder.createTempFile("temp", "txt");
+        FilePath subFolder = folder.child("sub");
+        subFolder.mkdirs();
+        subFolder.createTempFile("temp", "txt");
+        
+        TrashFolder trash = TrashFolder.forWorkspace(workspace);
+        trash.deleteContents(folder);
+        assertTrue("The folder was removed", folder.exists());
+        assertEquals("The folder was not emptied", 0, folder.list((FileFilter)null).size());
+        
+        while (trash.getPath().list((FileFilter)null).size() > 0) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test(timeout=10000)
+    public void assertLeftoversInTrashAreDeleted() throws Exception {
+        TrashFolder trash = TrashFolder.forWorkspace(workspace);
+        FilePath leftover = trash.getPath().child("leftover");
+        leftover.mkdirs();
+        leftover.createTempFile("temp", "txt");
+        
+        trash.deleteContents(workspace);
+        
+        while (leftover.exists()) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void assertTrashFolderInEmptiedFolderIsNotMoved() throws Exception {
+        TrashFolder trash = new TrashFolder(workspace.child(TrashFolder.NAME));
+        workspace.createTempFile("temp", "txt");
+        
+        trash.deleteContents(workspace);
+        assertEquals("The trash folder was moved", 1, workspace.list((FileFilter)null).size());
+        assertTrue("The trash folder was removed", trash.getPath().exists());
+    }
+}
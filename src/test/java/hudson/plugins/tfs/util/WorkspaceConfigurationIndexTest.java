@@ -0,0 +1,127 @@
+package hudson.plugins.tfs.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+
+import hudson.FilePath;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Node;
+import hudson.plugins.tfs.Util;
+import hudson.plugins.tfs.model.WorkspaceConfiguration;
+import hudson.plugins.tfs.util.BuildWorkspaceConfigurationRetriever.BuildWorkspaceConfiguration;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("unchecked")
+public class WorkspaceConfigurationIndexTest {
+
+    private FilePath root;
+    private XmlFile file;
+    private AbstractProject project;
+    private Node node;
+
+    @Before
+    public void setup() throws Exception {
+        root = Util.createTempFilePath();
+        root.mkdirs();
+        file = new XmlFile(new File(root.getRemote(), WorkspaceConfigurationIndex.FILE_NAME));
+        project = mock(AbstractProject.class);
+        node = mock(Node.class);
+        when(node.getNodeName()).thenReturn("node1");
+    }
+
+    @After
+    public void teardown() throws Exception {
+        root.deleteRecursive();
+    }
+
+    private AbstractBuild createBuild(int number, String nodeName, WorkspaceConfiguration configuration, AbstractBuild previousBuild) {
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getNumber()).thenReturn(number);
+        when(build.getBuiltOnStr()).thenReturn(nodeName);
+        when(build.getAction(WorkspaceConfiguration.class)).thenReturn(configuration);
+        when(build.getPreviousBuild()).thenReturn(previousBuild);
+        return build;
+    }
+
+    @Test
+    public void assertIndexIsCreatedFromBuildsOnce() throws Exception {
+        AbstractBuild first = createBuild(1, "node1", new WorkspaceConfiguration("server", "old", "$/project", "."), null);
+        AbstractBuild second = createBuild(2, "node1", new WorkspaceConfiguration("server", "workspace", "$/project", "."), first);
+        AbstractBuild third = createBuild(3, "node2", new WorkspaceConfiguration("server", "other", "$/project", "."), second);
+
+        BuildWorkspaceConfiguration configuration = new WorkspaceConfigurationIndex(project, file).getLatestForNode(node, third);
+        assertEquals("The workspace configuration was incorrect", "workspace", configuration.getWorkspaceName());
+        assertTrue("The index file was not written", file.exists());
+        verify(first, never()).getAction(WorkspaceConfiguration.class);
+
+        AbstractBuild fourth = createBuild(4, "node1", null, third);
+        configuration = new WorkspaceConfigurationIndex(project, file).getLatestForNode(node, fourth);
+        assertEquals("The workspace configuration was not read from the index", "workspace", configuration.getWorkspaceName());
+        verify(fourth, never()).getAction(WorkspaceConfiguration.class);
+        verify(fourth, never()).getPreviousBuild();
+    }
+
+    @Test
+    public void assertNodeWithoutConfigurationIsIndexed() throws Exception {
+        AbstractBuild first = createBuild(1, "node1", new WorkspaceConfiguration("server", "workspace", "$/project", "."), null);
+        AbstractBuild second = createBuild(2, "node1", null, first);
+        WorkspaceConfigurationIndex index = new WorkspaceConfigurationIndex(project, file);
+
+        assertNull("The workspace configuration was not null", index.getLatestForNode(node, second));
+        assertEquals("The number of nodes was incorrect", 1, index.getNodeNames(second).size());
+    }
+
+    @Test
+    public void assertPutConfigurationIsLatestForNode() throws Exception {
+        WorkspaceConfigurationIndex index = new WorkspaceConfigurationIndex(project, file);
+        AbstractBuild first = createBuild(1, "node1", null, null);
+        index.put(first, new WorkspaceConfiguration("server", "workspace", "$/project", "."));
+        AbstractBuild second = createBuild(2, "node1", null, first);
+        index.put(second, new WorkspaceConfiguration("server", "newworkspace", "$/project", "."));
+
+        assertEquals("The workspace configuration was incorrect", "newworkspace", index.getLatestForNode(node, second).getWorkspaceName());
+        assertEquals("The stored workspace configuration was incorrect", "newworkspace", 
+                new WorkspaceConfigurationIndex(project, file).getLatestForNode(node, second).getWorkspaceName());
+    }
+
+    @Test
+    public void assertOlderBuildDoesNotReplaceConfiguration() throws Exception {
+        WorkspaceConfigurationIndex index = new WorkspaceConfigurationIndex(project, file);
+        index.put(createBuild(2, "node1", null, null), new WorkspaceConfiguration("server", "workspace", "$/project", "."));
+        index.put(createBuild(1, "node1", null, null), new WorkspaceConfiguration("server", "oldworkspace", "$/project", "."));
+
+        assertEquals("The workspace configuration was incorrect", "workspace", index.getLatestForNode(node, null).getWorkspaceName());
+    }
+
+    @Test
+    public void assertRemovedWorkspaceIsSavedToIndexAndBuild() throws Exception {
+        WorkspaceConfiguration buildConfiguration = new WorkspaceConfiguration("server", "workspace", "$/project", ".");
+        AbstractBuild build = createBuild(1, "node1", buildConfiguration, null);
+        when(project.getBuildByNumber(1)).thenReturn(build);
+        WorkspaceConfigurationIndex index = new WorkspaceConfigurationIndex(project, file);
+
+        BuildWorkspaceConfiguration configuration = index.getLatestForNode(node, build);
+        configuration.setWorkspaceWasRemoved();
+        configuration.save();
+
+        assertFalse("The index was not updated", new WorkspaceConfigurationIndex(project, file).getLatestForNode(node, build).workspaceExists());
+        assertFalse("The build was not updated", buildConfiguration.workspaceExists());
+        verify(build).save();
+    }
+
+    @Test
+    public void assertRenamedJobGetsNewIndex() throws Exception {
+        when(project.getRootDir()).thenReturn(new File(root.getRemote(), "job"));
+        WorkspaceConfigurationIndex index = WorkspaceConfigurationIndex.forJob(project);
+        assertSame("The index was not shared", index, WorkspaceConfigurationIndex.forJob(project));
+        when(project.getRootDir()).thenReturn(new File(root.getRemote(), "renamedjob"));
+        assertNotSame("The index of the old job folder was returned", index, WorkspaceConfigurationIndex.forJob(project));
+    }
+}